@@ -30,7 +30,7 @@ public class AcceptSplitPaymentCommand implements Command {
                     command.getTimestamp(), command.getCommand());
             return;
         }
-        PaymentProcessor paymentProcessor = PaymentProcessor.getInstance();
+        PaymentProcessor paymentProcessor = context.getEngine().getPaymentProcessor();
         paymentProcessor.processResponse(command.getEmail(), true,
                 context, command.getSplitPaymentType());
     }
@@ -5,7 +5,6 @@ import org.poo.fileio.CommandInput;
 import org.poo.models.Account;
 import org.poo.models.Transaction;
 import org.poo.models.User;
-import org.poo.utils.Utils;
 
 import static org.poo.commands.CommandErrors.addError;
 import static org.poo.models.User.findUserByEmail;
@@ -25,7 +24,7 @@ public class AddAccountCommand implements  Command {
                 throw new UserNotFoundException("User not found");
             }
 
-            String iban = Utils.generateIBAN();
+            String iban = context.getEngine().getIdGenerator().generateIBAN();
             user.addAccount(new Account(iban, command.getCurrency(),
                     command.getAccountType(), command.getEmail()));
 
@@ -86,24 +86,15 @@ public class CashWithdrawalCommand implements Command {
             System.out.println("finalAmountInAccountCurrency: "
                     + amountInAccountCurrency + " " + accountUser.getCurrency());
 
-            // Check if the card is active amd if the account has enough funds
-            double newBalance = accountUser.getBalance() - amountInAccountCurrency;
-            System.out.println("newBalance: " + newBalance + " " + accountUser.getCurrency());
             System.out.println("minimumBalance: " + accountUser.getMinimumBalance()
                                 + " " + accountUser.getCurrency());
-            if (newBalance < 0 || newBalance < accountUser.getMinimumBalance()) {
-                if (cardUser.getStatus().equals("active")
-                        && amountInAccountCurrency > accountUser.getBalance()) {
-                    System.out.println("Insufficient funds pentru extragerea de numarar");
-                    throw new InsufficientFundsException("Insufficient funds");
-                }
-            }
 
-            // Make the payment
-            accountUser.setBalance(accountUser.getBalance() - amountInAccountCurrency);
-            if (cardUser.getStatus().equals("active")
-                    && accountUser.getBalance() >= accountUser.getMinimumBalance()) {
-                cardUser.setStatus("active");
+            // Check if the card is active and make the payment if the account has enough
+            // funds (the balance can not go below 0 either), checking and taking the amount
+            // in a single step
+            boolean active = cardUser.getStatus().equals("active");
+            if (active && accountUser.debitIfAtLeast(amountInAccountCurrency,
+                    Math.max(0, accountUser.getMinimumBalance()))) {
                 System.out.println("S-au extras bani CU SUCCES account balance "
                                     + accountUser.getIban() + " plata online: "
                                     + accountUser.getBalance() + " "
@@ -114,11 +105,12 @@ public class CashWithdrawalCommand implements Command {
                         .error("Cash withdrawal")
                         .build();
                 user.addTransaction(transaction);
+            } else if (active && amountInAccountCurrency > accountUser.getBalance()) {
+                System.out.println("Insufficient funds pentru extragerea de numarar");
+                throw new InsufficientFundsException("Insufficient funds");
             } else {
-                // The payment cannot be made, so the amount is returned to the account
-                // and the card is frozen
+                // The payment cannot be made, so the card is frozen
                 cardUser.setStatus("frozen");
-                accountUser.setBalance(accountUser.getBalance() + finalAmount);
                 throw new UnauthorizedCardStatusException("The card is frozen");
             }
         } catch (UserNotFoundException | CardNotFoundException | UnauthorizedCardAccessException
@@ -1,8 +1,9 @@
 package org.poo.commands;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import lombok.Getter;
+import org.poo.engine.BankEngine;
+import org.poo.fileio.OutputSink;
 import org.poo.models.User;
 import org.poo.services.Commerciant;
 import org.poo.services.CurrencyConverter;
@@ -14,27 +15,31 @@ import java.util.List;
  * CommandContext encapsulates all the resources needed for executing commands:
  * - List of users
  * - ObjectMapper for JSON serialization
- * - ArrayNode for output
+ * - OutputSink for the results of the commands
  * - CurrencyConverter for currency conversion
  *  - List of commerciants (added in the second part of the project)
+ *  - The BankEngine that owns the rest of the state of the bank
  */
 public class CommandContext {
+    private final BankEngine engine;
     private final List<User> users;
     private final List<Commerciant> commerciants;
     private final ObjectMapper objectMapper;
-    private final ArrayNode output;
+    private final OutputSink output;
     private final CurrencyConverter currencyConverter;
 
-    public CommandContext(final List<User> users,
-                          final List<Commerciant> commerciants,
-                          final ObjectMapper objectMapper,
-                          final ArrayNode output,
-                          final CurrencyConverter currencyConverter) {
+    public CommandContext(final BankEngine engine, final OutputSink output) {
+        this(engine, engine.getUsers(), output);
+    }
+
+    public CommandContext(final BankEngine engine, final List<User> users,
+                          final OutputSink output) {
+        this.engine = engine;
         this.users = users;
-        this.commerciants = commerciants;
-        this.objectMapper = objectMapper;
+        this.commerciants = engine.getCommerciants();
+        this.objectMapper = engine.getObjectMapper();
         this.output = output;
-        this.currencyConverter = currencyConverter;
+        this.currencyConverter = engine.getCurrencyConverter();
     }
 
     /**
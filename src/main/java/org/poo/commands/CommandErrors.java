@@ -1,62 +1,66 @@
 package org.poo.commands;
 
-import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.poo.fileio.OutputSink;
 
 /**
- * Abstract class that contains methods for adding errors to the output array.
+ * Abstract class that contains methods for adding errors to the output.
  */
 public abstract class CommandErrors {
 
     /**
-     * Add an error description to the output array.
-     * @param output the output array
+     * Add an error description to the output.
+     * @param output the output sink
      * @param errorMessage the error message
      * @param timestamp the timestamp of the command
      * @param commandName the name of the command
      */
-    public static void addError(final ArrayNode output, final String errorMessage,
+    public static void addError(final OutputSink output, final String errorMessage,
                                 final int timestamp, final String commandName) {
-        ObjectNode errorNode = output.addObject();
+        ObjectNode errorNode = JsonNodeFactory.instance.objectNode();
         errorNode.put("command", commandName);
         ObjectNode descriptionNode = errorNode.putObject("output");
         descriptionNode.put("timestamp", timestamp);
         descriptionNode.put("description", errorMessage);
         errorNode.put("timestamp", timestamp);
+        output.add(errorNode);
     }
 
     /**
-     * Add an output error to the output array.
-     * @param output the output array
+     * Add an output error to the output.
+     * @param output the output sink
      * @param errorMessage the error message
      * @param timestamp the timestamp of the command
      * @param commandName the name of the command
      */
-    public static void addErrorDescription(final ArrayNode output, final String errorMessage,
+    public static void addErrorDescription(final OutputSink output, final String errorMessage,
                                            final int timestamp, final String commandName) {
-        ObjectNode errorNode = output.addObject();
+        ObjectNode errorNode = JsonNodeFactory.instance.objectNode();
         errorNode.put("command", commandName);
         ObjectNode descriptionNode = errorNode.putObject("output");
         descriptionNode.put("timestamp", timestamp);
         descriptionNode.put("error", errorMessage);
         errorNode.put("timestamp", timestamp);
+        output.add(errorNode);
     }
 
     /**
-     * Add an error type to the output array.
-     * @param output the output array
+     * Add an error type to the output.
+     * @param output the output sink
      * @param errorMessage the error message
      * @param timestamp the timestamp of the command
      * @param commandName the name of the command
      */
-    public static void addErrorType(final ArrayNode output,
+    public static void addErrorType(final OutputSink output,
                                     final String errorMessage,
                                     final int timestamp,
                                     final String commandName) {
-        ObjectNode errorNode = output.addObject();
+        ObjectNode errorNode = JsonNodeFactory.instance.objectNode();
         errorNode.put("command", commandName);
         ObjectNode descriptionNode = errorNode.putObject("output");
         descriptionNode.put("error", errorMessage);
         errorNode.put("timestamp", timestamp);
+        output.add(errorNode);
     }
 }
@@ -1,13 +1,8 @@
 package org.poo.commands;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
+import org.poo.engine.BankEngine;
 import org.poo.fileio.CommandInput;
-import org.poo.models.User;
-import org.poo.services.Commerciant;
-import org.poo.services.CurrencyConverter;
-
-import java.util.List;
+import org.poo.fileio.OutputSink;
 
 /**
  * Class that executes the commands.
@@ -16,13 +11,12 @@ public final class CommandExecutor {
 
     private final CommandContext context;
 
-    public CommandExecutor(final List<User> users,
-                           final List<Commerciant> commerciants,
-                           final ObjectMapper objectMapper,
-                           final ArrayNode output,
-                           final CurrencyConverter currencyConverter) {
-        this.context = new CommandContext(users, commerciants, objectMapper,
-                                          output, currencyConverter);
+    public CommandExecutor(final BankEngine engine, final OutputSink output) {
+        this.context = engine.createContext(output);
+    }
+
+    public CommandExecutor(final CommandContext context) {
+        this.context = context;
     }
 
     /**
@@ -31,8 +25,61 @@ public final class CommandExecutor {
      * @throws Exception if the command is not found
      */
     public void execute(final CommandInput commandInput) throws Exception {
+        advanceClock(commandInput);
+        resolve(commandInput).execute(commandInput, context);
+    }
+
+    /**
+     * Finds the command that handles an input. Callers that run many commands can resolve
+     * them in advance and use executeSafely(Command, CommandInput).
+     * @param commandInput the input of the command
+     * @return the command registered for the type of the input
+     */
+    public static Command resolve(final CommandInput commandInput) {
         CommandType commandType = CommandType.fromCommandName(commandInput.getCommand());
-        Command command = CommandRegistry.getCommand(commandType);
-        command.execute(commandInput, context);
+        return CommandRegistry.getCommand(commandType);
+    }
+
+    /**
+     * Executes the command and logs the error if it fails, so that one bad command
+     * does not stop the rest of the run.
+     * @param commandInput the input of the command
+     */
+    public void executeSafely(final CommandInput commandInput) {
+        executeSafely(resolve(commandInput), commandInput);
+    }
+
+    /**
+     * Executes an already resolved command and logs the error if it fails.
+     * @param command the command, as returned by resolve
+     * @param commandInput the input of the command
+     */
+    public void executeSafely(final Command command, final CommandInput commandInput) {
+        try {
+            advanceClock(commandInput);
+            command.execute(commandInput, context);
+        } catch (Exception e) {
+            // Log or handle generic exceptions to avoid stopping execution
+            logFailure(commandInput, e);
+        }
+    }
+
+    /**
+     * Rejects the split payments that expired before the command.
+     * @param commandInput the input of the command about to be executed
+     */
+    private void advanceClock(final CommandInput commandInput) {
+        context.getEngine().getPaymentProcessor()
+                .advanceClock(commandInput.getTimestamp(), context);
+    }
+
+    /**
+     * Logs a command that failed with an exception.
+     * @param commandInput the input of the command
+     * @param e the exception thrown by the command
+     */
+    public static void logFailure(final CommandInput commandInput, final Exception e) {
+        System.err.println("Error executing command: " + commandInput.getCommand()
+                + " " + e.getMessage() + " " + commandInput.getTimestamp());
     }
 }
@@ -29,6 +29,8 @@ public abstract class CommandRegistry {
         COMMANDS.put(CommandType.REPORT, new ReportCommand());
         COMMANDS.put(CommandType.SPENDINGS_REPORT, new SpendingsReportCommand());
         COMMANDS.put(CommandType.BUSINESS_REPORT, new BusinessReportCommand());
+        COMMANDS.put(CommandType.TOP_SPENDERS_REPORT, new TopSpendersReportCommand());
+        COMMANDS.put(CommandType.CONSOLIDATED_REPORT, new ConsolidatedReportCommand());
         COMMANDS.put(CommandType.ADD_INTEREST, new AddInterestCommand());
         COMMANDS.put(CommandType.CHANGE_INTEREST_RATE, new ChangeInterestRateCommand());
         COMMANDS.put(CommandType.WITHDRAW_SAVINGS, new WithdrawSavingsCommand());
@@ -1,5 +1,8 @@
 package org.poo.commands;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Enum representing the command types.
  */
@@ -21,6 +24,8 @@ public enum CommandType {
     REPORT("report"),
     SPENDINGS_REPORT("spendingsReport"),
     BUSINESS_REPORT("businessReport"),
+    TOP_SPENDERS_REPORT("topSpendersReport"),
+    CONSOLIDATED_REPORT("consolidatedReport"),
     ADD_INTEREST("addInterest"),
     CHANGE_INTEREST_RATE("changeInterestRate"),
     WITHDRAW_SAVINGS("withdrawSavings"),
@@ -33,6 +38,15 @@ public enum CommandType {
     CHANGE_DEPOSIT_LIMIT("changeDepositLimit"),
     DEFAULT("default");
 
+    // Every command is looked up by name, so the names are indexed once
+    private static final Map<String, CommandType> BY_NAME = new HashMap<>();
+
+    static {
+        for (CommandType type : values()) {
+            BY_NAME.put(type.commandName, type);
+        }
+    }
+
     private final String commandName;
 
     CommandType(final String commandName) {
@@ -45,12 +59,10 @@ public enum CommandType {
      * @return the command type.
      */
     public static CommandType fromCommandName(final String commandName) {
-        for (CommandType type : values()) {
-            if (type.commandName.equals(commandName)) {
-                return type;
-            }
+        if (commandName == null) {
+            return DEFAULT;
         }
-        return DEFAULT;
+        return BY_NAME.getOrDefault(commandName, DEFAULT);
     }
 }
 
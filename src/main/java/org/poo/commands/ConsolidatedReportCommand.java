@@ -0,0 +1,105 @@
+package org.poo.commands;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.poo.fileio.CommandInput;
+import org.poo.models.Account;
+import org.poo.models.Transaction;
+import org.poo.models.User;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ConsolidatedReportCommand implements Command {
+    /**
+     * Generate one report with the balance, the total spent and the total deposited
+     * of every account of the bank in a time interval.
+     * Each ledger is visited once; the ledgers are split between the available cores and
+     * the partial totals are merged in the order of the users, so the sums do not depend
+     * on the scheduling of the threads. The balances are read together (see
+     * Account.balancesOf), so a transfer between two accounts is never reported halfway.
+     * @param command the command to be executed
+     * @param context the context of the command
+     */
+    @Override
+    public void execute(final CommandInput command, final CommandContext context) {
+        System.out.println("consolidatedReport " + command.getTimestamp());
+        List<Map<String, Totals>> partialTotals = context.getUsers().parallelStream()
+                .map(user -> scanLedger(user, command.getStartTimestamp(),
+                        command.getEndTimestamp()))
+                .toList();
+
+        // Business accounts can appear in the ledgers of several associates
+        Map<String, Totals> totalsByAccount = new HashMap<>();
+        for (Map<String, Totals> partial : partialTotals) {
+            partial.forEach((iban, totals) ->
+                    totalsByAccount.merge(iban, totals, Totals::merge));
+        }
+
+        List<Account> accounts = new ArrayList<>();
+        for (User user : context.getUsers()) {
+            accounts.addAll(user.getAccounts());
+        }
+        double[] balances = Account.balancesOf(accounts);
+
+        ArrayNode accountsArray = context.getObjectMapper().createArrayNode();
+        for (int i = 0; i < accounts.size(); i++) {
+            Account account = accounts.get(i);
+            Totals totals = totalsByAccount.getOrDefault(account.getIban(), new Totals());
+            ObjectNode accountNode = accountsArray.addObject();
+            accountNode.put("IBAN", account.getIban());
+            accountNode.put("owner", account.getOwner());
+            accountNode.put("type", account.getType());
+            accountNode.put("balance", balances[i]);
+            accountNode.put("currency", account.getCurrency());
+            accountNode.put("spent", totals.spent);
+            accountNode.put("deposited", totals.deposited);
+        }
+
+        ObjectNode commandNode = context.getObjectMapper().createObjectNode();
+        commandNode.put("command", command.getCommand());
+        commandNode.set("output", accountsArray);
+        commandNode.put("timestamp", command.getTimestamp());
+        context.getOutput().add(commandNode);
+    }
+
+    /**
+     * Sum the spent and deposited amounts of one ledger, for each account.
+     * Only the transactions inside the interval are visited.
+     * @param user the owner of the ledger
+     * @param startTimestamp the start timestamp
+     * @param endTimestamp the end timestamp
+     * @return the totals of each account that appears in the ledger
+     */
+    private static Map<String, Totals> scanLedger(final User user, final int startTimestamp,
+                                                  final int endTimestamp) {
+        Map<String, Totals> totalsByAccount = new HashMap<>();
+        for (Transaction transaction : user.getTransactionsBetween(startTimestamp,
+                                                                   endTimestamp)) {
+            if ("spending".equals(transaction.getType())) {
+                totalsByAccount.computeIfAbsent(transaction.getAccount(), iban -> new Totals())
+                        .spent += transaction.getAmount();
+            } else if ("deposit".equals(transaction.getType())) {
+                totalsByAccount.computeIfAbsent(transaction.getAccount(), iban -> new Totals())
+                        .deposited += transaction.getAmount();
+            }
+        }
+        return totalsByAccount;
+    }
+
+    /**
+     * Running totals of one account.
+     */
+    private static final class Totals {
+        private double spent;
+        private double deposited;
+
+        private Totals merge(final Totals other) {
+            spent += other.spent;
+            deposited += other.deposited;
+            return this;
+        }
+    }
+}
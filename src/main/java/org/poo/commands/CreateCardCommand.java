@@ -5,7 +5,6 @@ import org.poo.models.Account;
 import org.poo.models.Card;
 import org.poo.models.Transaction;
 import org.poo.models.User;
-import org.poo.utils.Utils;
 
 import static org.poo.models.User.findUserByEmail;
 
@@ -21,7 +20,7 @@ public class CreateCardCommand implements Command {
         if (user != null) {
             Account account = user.findAccountByIban(command.getAccount());
             if (account != null) {
-                String cardNumber = Utils.generateCardNumber();
+                String cardNumber = context.getEngine().getIdGenerator().generateCardNumber();
                 account.addCard(new Card(cardNumber, "active", "normal"));
                 Transaction transaction = new Transaction.TransactionBuilder(command.getTimestamp(),
                         "New card created", account.getIban(), "create")
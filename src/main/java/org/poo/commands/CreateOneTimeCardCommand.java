@@ -7,7 +7,6 @@ import org.poo.models.Account;
 import org.poo.models.Card;
 import org.poo.models.Transaction;
 import org.poo.models.User;
-import org.poo.utils.Utils;
 
 import static org.poo.commands.CommandErrors.addError;
 import static org.poo.models.User.findUserByEmail;
@@ -33,7 +32,7 @@ public class CreateOneTimeCardCommand implements Command {
             }
 
             // Generate the card number and create the card
-            String cardNumber = Utils.generateCardNumber();
+            String cardNumber = context.getEngine().getIdGenerator().generateCardNumber();
             Card oneTimeCard = new Card(cardNumber, "active", "one time pay");
 
             account.addCard(oneTimeCard);
@@ -65,12 +65,13 @@ public class DeleteAccountCommand implements  Command {
             userWithAccount.getAccounts().remove(accountToDelete);
 
             // Add a success message to the output
-            ObjectNode successNode = context.getOutput().addObject();
+            ObjectNode successNode = context.getObjectMapper().createObjectNode();
             successNode.put("command", "deleteAccount");
             ObjectNode descriptionNode = successNode.putObject("output");
             descriptionNode.put("success", "Account deleted");
             descriptionNode.put("timestamp", timestamp);
             successNode.put("timestamp", timestamp);
+            context.getOutput().add(successNode);
 
         } catch (UserNotFoundException e) {
             // Handle "User not found" exception
@@ -14,7 +14,6 @@ import org.poo.models.User;
 import org.poo.services.CashbackStrategy;
 import org.poo.services.Commerciant;
 import org.poo.services.GoldPlan;
-import org.poo.utils.Utils;
 
 import static org.poo.commands.CommandErrors.addError;
 import static org.poo.models.User.findUserByEmail;
@@ -144,21 +143,11 @@ public class PayOnlineCommand implements Command {
             double finalAmount = amountInAccountCurrency + commission - cashback;
             System.out.println("finalAmount: " + finalAmount + " " + accountUser.getCurrency());
 
-            // Check if the card is active amd if the account has enough funds
-            double newBalance = accountUser.getBalance() - finalAmount;
-            if (newBalance < accountUser.getMinimumBalance()) {
-                if (cardUser.getStatus().equals("active")
-                        && finalAmount > accountUser.getBalance()) {
-                    System.out.println("Insufficient funds at timestamp "
-                                        + command.getTimestamp());
-                    throw new InsufficientFundsException("Insufficient funds");
-                }
-            }
-            // Make the payment
-            accountUser.setBalance(accountUser.getBalance() - finalAmount);
-            if (cardUser.getStatus().equals("active")
-                    && accountUser.getBalance() >= accountUser.getMinimumBalance()) {
-                cardUser.setStatus("active");
+            // Check if the card is active and make the payment if the account has enough
+            // funds, checking and taking the amount in a single step
+            boolean active = cardUser.getStatus().equals("active");
+            if (active && accountUser.debitIfAtLeast(finalAmount,
+                    accountUser.getMinimumBalance())) {
                 System.out.println("S-A EFECTUAT TRANZACTIA CU SUCCES account balance "
                         + accountUser.getIban() + " plata online: "
                         + accountUser.getBalance() + " " + accountUser.getCurrency());
@@ -183,13 +172,15 @@ public class PayOnlineCommand implements Command {
                 // If the card is the type of "one time pay",
                 // it is destroyed after the payment and a new card is created
                 if (cardUser.getType().equals("one time pay")) {
-                    deleteAndCreateNewCard(cardUser, user, accountUser, command);
+                    deleteAndCreateNewCard(cardUser, user, accountUser, command, context);
                 }
+            } else if (active && finalAmount > accountUser.getBalance()) {
+                System.out.println("Insufficient funds at timestamp "
+                                    + command.getTimestamp());
+                throw new InsufficientFundsException("Insufficient funds");
             } else {
-                // The payment cannot be made, so the amount is returned to the account
-                // and the card is frozen
+                // The payment cannot be made, so the card is frozen
                 cardUser.setStatus("frozen");
-                accountUser.setBalance(accountUser.getBalance() + finalAmount);
                 throw new UnauthorizedCardStatusException("The card is frozen");
             }
         } catch (UserNotFoundException | CardNotFoundException | UnauthorizedCardAccessException
@@ -215,10 +206,12 @@ public class PayOnlineCommand implements Command {
      * @param user the user that made the payment
      * @param accountUser the user's account
      * @param command the command from input
+     * @param context the context of the command
      */
     private static void deleteAndCreateNewCard(final Card cardUser,
                                                final User user, final Account accountUser,
-                                               final CommandInput command) {
+                                               final CommandInput command,
+                                               final CommandContext context) {
         int timestamp = command.getTimestamp();
         String cardNumber =  command.getCardNumber();
 
@@ -231,7 +224,7 @@ public class PayOnlineCommand implements Command {
                 .build();
         user.addTransaction(transaction1);
 
-        String newCardNumber = Utils.generateCardNumber();
+        String newCardNumber = context.getEngine().getIdGenerator().generateCardNumber();
         Card oneTimeCard = new Card(newCardNumber, "active", "one time pay");
         accountUser.addCard(oneTimeCard);
 
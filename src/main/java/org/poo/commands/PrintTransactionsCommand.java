@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.poo.exceptions.UserNotFoundException;
 import org.poo.fileio.CommandInput;
+import org.poo.models.TransactionCursor;
 import org.poo.models.User;
 
 import static org.poo.commands.CommandErrors.addError;
@@ -12,6 +13,8 @@ import static org.poo.models.User.findUserByEmail;
 public class PrintTransactionsCommand implements Command {
     /**
      * Print the transactions of a specific user.
+     * If the command has a limit, only one page of transactions is printed and the cursor
+     * of the next page is added next to the output.
      * @param command   Command input containing email, card number, amount, and currency.
      */
     @Override
@@ -29,13 +32,27 @@ public class PrintTransactionsCommand implements Command {
             return;
         }
 
+        TransactionCursor cursor;
+        try {
+            cursor = command.getCursor() == null
+                    ? null : TransactionCursor.decode(command.getCursor());
+        } catch (IllegalArgumentException e) {
+            addError(context.getOutput(), "Invalid cursor",
+                    command.getTimestamp(), command.getCommand());
+            return;
+        }
+
         ArrayNode transactionsArray = context.getObjectMapper().createArrayNode();
         System.out.println("Transactions for user " + user.getEmail());
-        user.printTransactions(transactionsArray, context.getOutput());
+        TransactionCursor nextCursor = user.printTransactions(transactionsArray,
+                cursor, command.getLimit());
 
         ObjectNode commandNode = context.getObjectMapper().createObjectNode();
         commandNode.put("command", "printTransactions");
         commandNode.set("output", transactionsArray);
+        if (nextCursor != null) {
+            commandNode.put("nextCursor", nextCursor.encode());
+        }
         commandNode.put("timestamp", command.getTimestamp());
         context.getOutput().add(commandNode);
     }
@@ -7,14 +7,26 @@ import org.poo.models.Account;
 import org.poo.models.Card;
 import org.poo.models.User;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class PrintUsersCommand implements Command {
     /**
      * Print the users and their accounts to the output file in format JSON.
+     * The balances are read together (see Account.balancesOf), so a transfer between
+     * two accounts is never printed halfway.
      * @param command the command to be executed
      * @param context the context of the command
      */
     @Override
     public void execute(final CommandInput command, final CommandContext context) {
+        List<Account> accounts = new ArrayList<>();
+        for (User user : context.getUsers()) {
+            accounts.addAll(user.getAccounts());
+        }
+        double[] balances = Account.balancesOf(accounts);
+        int next = 0;
+
         ArrayNode userOutput = context.getObjectMapper().createArrayNode();
         for (User user : context.getUsers()) {
             ObjectNode userNode = context.getObjectMapper().createObjectNode();
@@ -26,7 +38,7 @@ public class PrintUsersCommand implements Command {
             for (Account account : user.getAccounts()) {
                 ObjectNode accountNode = context.getObjectMapper().createObjectNode();
                 accountNode.put("IBAN", account.getIban());
-                accountNode.put("balance", account.getBalance());
+                accountNode.put("balance", balances[next++]);
                 accountNode.put("currency", account.getCurrency());
                 accountNode.put("type", account.getType());
 
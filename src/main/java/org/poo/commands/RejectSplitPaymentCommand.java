@@ -32,7 +32,7 @@ public class RejectSplitPaymentCommand implements Command {
                     command.getTimestamp(), command.getCommand());
             return;
         }
-        PaymentProcessor paymentProcessor = PaymentProcessor.getInstance();
+        PaymentProcessor paymentProcessor = context.getEngine().getPaymentProcessor();
         paymentProcessor.processResponse(command.getEmail(), false,
                                          context, command.getSplitPaymentType());
     }
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.poo.fileio.CommandInput;
 import org.poo.models.Account;
+import org.poo.models.TransactionCursor;
 import org.poo.models.User;
 
 import static org.poo.commands.CommandErrors.addError;
@@ -11,6 +12,8 @@ import static org.poo.commands.CommandErrors.addError;
 public class ReportCommand implements Command {
     /**
      * Generate a report with the transactions of a specific account.
+     * If the command has a limit, only one page of transactions is added to the report,
+     * along with the cursor of the next page.
      * @param command   Command input containing email, card number, amount, and currency.
      */
     @Override
@@ -30,6 +33,16 @@ public class ReportCommand implements Command {
             return;
         }
 
+        TransactionCursor cursor;
+        try {
+            cursor = command.getCursor() == null
+                    ? null : TransactionCursor.decode(command.getCursor());
+        } catch (IllegalArgumentException e) {
+            addError(context.getOutput(), "Invalid cursor",
+                    command.getTimestamp(), command.getCommand());
+            return;
+        }
+
         // Create the principal node for the output
         ObjectNode reportNode = context.getObjectMapper().createObjectNode();
         reportNode.put("IBAN", account.getIban());
@@ -38,9 +51,13 @@ public class ReportCommand implements Command {
 
         // Select the transactions in the specified time interval
         ArrayNode transactionsArray = context.getObjectMapper().createArrayNode();
-        user.printReportTransactions(transactionsArray, context.getOutput(),
-                command.getStartTimestamp(), command.getEndTimestamp(), account.getIban());
+        TransactionCursor nextCursor = user.printReportTransactions(transactionsArray,
+                command.getStartTimestamp(), command.getEndTimestamp(), account.getIban(),
+                cursor, command.getLimit());
         reportNode.set("transactions", transactionsArray);
+        if (nextCursor != null) {
+            reportNode.put("nextCursor", nextCursor.encode());
+        }
 
         // Add the final output to the output array
         ObjectNode commandNode = context.getObjectMapper().createObjectNode();
@@ -145,14 +145,12 @@ public class SendMoneyCommand implements Command {
         System.out.println("commission: " + commission);
         double finalAmount = amount + commission;
 
-        double newBalance = senderAccount.getBalance() - finalAmount;
-        if (newBalance < senderAccount.getMinimumBalance()) {
+        // Make the actual transaction, if the sender stays above the minimum balance
+        if (!senderAccount.transferTo(receiverAccount, finalAmount,
+                senderAccount.getMinimumBalance(), convertedAmount)) {
             System.out.println("Insufficient funds at timestamp " + command.getTimestamp());
             throw new InsufficientFundsException("Insufficient funds");
         }
-        // Make the actual transaction
-        senderAccount.setBalance((senderAccount.getBalance() - finalAmount));
-        receiverAccount.setBalance((receiverAccount.getBalance() + convertedAmount));
         System.out.println("senderAccount balance: "
                 + senderAccount.getBalance() + " " + senderCurrency);
         System.out.println("receiverAccount balance: "
@@ -221,13 +219,10 @@ public class SendMoneyCommand implements Command {
         double finalAmount = amount + commission - cashback;
         System.out.println("finalAmount: " + finalAmount + " " + senderAccount.getCurrency());
 
-        double newBalance = senderAccount.getBalance() - finalAmount;
-        if (newBalance < senderAccount.getMinimumBalance()) {
+        if (!senderAccount.debitIfAtLeast(finalAmount, senderAccount.getMinimumBalance())) {
             System.out.println("Insufficient funds for transaction at timestamp " + timestamp);
             throw new InsufficientFundsException("Insufficient funds.");
         }
-
-        senderAccount.setBalance(newBalance);
         if (cashbackType.equals("spendingThreshold")) {
             senderAccount.setSpendingThreshold(senderAccount.getSpendingThreshold() + amountInRON);
         }
@@ -20,7 +20,7 @@ public class SplitPaymentCommand implements Command {
      */
     @Override
     public void execute(final CommandInput command, final CommandContext context) {
-        PaymentProcessor paymentProcessor = PaymentProcessor.getInstance();
+        PaymentProcessor paymentProcessor = context.getEngine().getPaymentProcessor();
         Map<String, String> emailToAccount = new HashMap<>();
         Map<String, Double> accountBalances = new HashMap<>();
 
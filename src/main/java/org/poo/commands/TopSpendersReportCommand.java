@@ -0,0 +1,179 @@
+package org.poo.commands;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.poo.exceptions.CurrencyConversionException;
+import org.poo.fileio.CommandInput;
+import org.poo.models.Account;
+import org.poo.models.SpendingAggregates;
+import org.poo.models.User;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import static org.poo.commands.CommandErrors.addError;
+
+public class TopSpendersReportCommand implements Command {
+    private static final int DEFAULT_TOP = 5;
+    private static final Comparator<Map.Entry<String, Double>> BY_TOTAL =
+            Map.Entry.<String, Double>comparingByValue()
+                    .thenComparing(Map.Entry.<String, Double>comparingByKey().reversed());
+
+    /**
+     * Generate a report with the K commerciants that received the most money and the K users
+     * that spent the most in a time interval.
+     * If the command has an account, only the card payments made from that account are
+     * counted and the totals are in the account currency. Otherwise, the whole bank
+     * is used and the totals are in RON.
+     * The limit of the command is K (5 if it is missing).
+     * @param command the command to be executed
+     * @param context the context of the command
+     */
+    @Override
+    public void execute(final CommandInput command, final CommandContext context) {
+        int top = command.getLimit() > 0 ? command.getLimit() : DEFAULT_TOP;
+        Map<String, Double> spendingsByCommerciant = new HashMap<>();
+        Map<String, Double> spendingsByUser = new HashMap<>();
+
+        ObjectNode reportNode = context.getObjectMapper().createObjectNode();
+        try {
+            if (command.getAccount() != null) {
+                Account account = User.findAccountByIBAN(context.getUsers(),
+                                                         command.getAccount());
+                if (account == null) {
+                    addError(context.getOutput(), "Account not found",
+                            command.getTimestamp(), command.getCommand());
+                    return;
+                }
+                reportNode.put("IBAN", account.getIban());
+                reportNode.put("currency", account.getCurrency());
+                for (User user : findSpenders(account, context)) {
+                    aggregate(user, account.getIban(), command, context,
+                            spendingsByCommerciant, spendingsByUser);
+                }
+            } else {
+                reportNode.put("currency", "RON");
+                for (User user : context.getUsers()) {
+                    aggregate(user, null, command, context,
+                            spendingsByCommerciant, spendingsByUser);
+                }
+            }
+        } catch (CurrencyConversionException e) {
+            addError(context.getOutput(), e.getMessage(),
+                    command.getTimestamp(), command.getCommand());
+            return;
+        }
+
+        ArrayNode commerciantsArray = context.getObjectMapper().createArrayNode();
+        for (Map.Entry<String, Double> entry : selectTop(spendingsByCommerciant, top)) {
+            ObjectNode commerciantNode = commerciantsArray.addObject();
+            commerciantNode.put("commerciant", entry.getKey());
+            commerciantNode.put("total", entry.getValue());
+        }
+        reportNode.set("commerciants", commerciantsArray);
+
+        ArrayNode usersArray = context.getObjectMapper().createArrayNode();
+        for (Map.Entry<String, Double> entry : selectTop(spendingsByUser, top)) {
+            ObjectNode userNode = usersArray.addObject();
+            userNode.put("email", entry.getKey());
+            userNode.put("total", entry.getValue());
+        }
+        reportNode.set("users", usersArray);
+
+        ObjectNode commandNode = context.getObjectMapper().createObjectNode();
+        commandNode.put("command", command.getCommand());
+        commandNode.set("output", reportNode);
+        commandNode.put("timestamp", command.getTimestamp());
+        context.getOutput().add(commandNode);
+    }
+
+    /**
+     * The users that can spend from an account: the owner and the business associates.
+     * @param account the account
+     * @param context the context of the command
+     * @return the users, without duplicates
+     */
+    private static Set<User> findSpenders(final Account account, final CommandContext context) {
+        Set<User> spenders = new LinkedHashSet<>();
+        User owner = User.findUserByEmail(context.getUsers(), account.getOwner());
+        if (owner != null) {
+            spenders.add(owner);
+        }
+        for (String email : account.getAssociates().keySet()) {
+            User associate = User.findUserByEmail(context.getUsers(), email);
+            if (associate != null) {
+                spenders.add(associate);
+            }
+        }
+        return spenders;
+    }
+
+    /**
+     * Add the card payments of a user from the interval to the totals of the report.
+     * The payments are not visited: the user keeps running totals for each account,
+     * currency and commerciant (see SpendingAggregates), and each of them gives the total
+     * of the interval with two binary searches.
+     * @param user the user
+     * @param accountIban the account to filter by, or null to convert everything to RON
+     * @param command the command input
+     * @param context the context of the command
+     * @param spendingsByCommerciant the totals for each commerciant
+     * @param spendingsByUser the totals for each user
+     * @throws CurrencyConversionException if an amount cannot be converted to RON
+     */
+    private static void aggregate(final User user, final String accountIban,
+                                  final CommandInput command, final CommandContext context,
+                                  final Map<String, Double> spendingsByCommerciant,
+                                  final Map<String, Double> spendingsByUser)
+            throws CurrencyConversionException {
+        for (SpendingAggregates.Total total : user.getSpendings().totalsBetween(
+                command.getStartTimestamp(), command.getEndTimestamp())) {
+            double amount = total.amount();
+            if (accountIban != null) {
+                if (!total.account().equals(accountIban)) {
+                    continue;
+                }
+            } else {
+                amount *= context.getCurrencyConverter().convertCurrency(1, total.currency(),
+                        "RON");
+            }
+            spendingsByCommerciant.merge(total.commerciant(), amount, Double::sum);
+            spendingsByUser.merge(user.getEmail(), amount, Double::sum);
+        }
+    }
+
+    /**
+     * Select the K greatest totals with a bounded min-heap, in O(n log K).
+     * Equal totals are ordered by name.
+     * @param totals the totals to select from
+     * @param top K
+     * @return the K entries, from the greatest total to the smallest
+     */
+    private static List<Map.Entry<String, Double>> selectTop(final Map<String, Double> totals,
+                                                             final int top) {
+        // The heap never holds more than the candidates, whatever the limit
+        int capacity = Math.min(top, totals.size()) + 1;
+        PriorityQueue<Map.Entry<String, Double>> heap = new PriorityQueue<>(capacity, BY_TOTAL);
+        for (Map.Entry<String, Double> entry : totals.entrySet()) {
+            if (heap.size() < top) {
+                heap.add(entry);
+            } else if (BY_TOTAL.compare(entry, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(entry);
+            }
+        }
+        List<Map.Entry<String, Double>> result = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            result.add(heap.poll());
+        }
+        Collections.reverse(result);
+        return result;
+    }
+}
@@ -120,16 +120,14 @@ public class UpgradePlanCommand implements Command {
         double commission = user.getCurrentPlan().calculateTransactionFee(convertedFee);
         System.out.println("commission: " + commission);
 
-        // Check if the account has enough funds for the upgrade
-        if (account.getBalance() < convertedFee) {
+        // Debit the fee from the account, if it has enough funds for the upgrade
+        if (!account.debitIfAtLeast(convertedFee, 0)) {
             Transaction transaction = new Transaction.TransactionBuilder(command.getTimestamp(),
                     "Insufficient funds", accountIBAN, "error")
                     .build();
             user.addTransaction(transaction);
             return;
         }
-        // Debit the fee from the account
-        account.setBalance(account.getBalance() - convertedFee);
         System.out.println("account balance: " + account.getBalance());
         ServicePlanStrategy newPlan = ServicePlanFactory.createServicePlan(newPlanType);
         user.setCurrentPlan(newPlan);
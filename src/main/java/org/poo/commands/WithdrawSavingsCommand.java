@@ -68,10 +68,7 @@ public class WithdrawSavingsCommand implements Command {
 
         // Check if the account has enough funds
         if (account.getBalance() < amount) {
-            Transaction transaction = new Transaction.TransactionBuilder(command.getTimestamp(),
-                    "Insufficient funds", accountIBAN, "error")
-                    .build();
-            user.addTransaction(transaction);
+            addInsufficientFunds(user, command);
             return;
         }
 
@@ -85,9 +82,11 @@ public class WithdrawSavingsCommand implements Command {
             return;
         }
 
-        account.setBalance(account.getBalance() - amount);
-        classicAccount.setBalance(classicAccount.getBalance() + convertedAmount);
-
+        // The balance is checked again, together with the transfer
+        if (!account.transferTo(classicAccount, amount, 0, convertedAmount)) {
+            addInsufficientFunds(user, command);
+            return;
+        }
 
         Transaction transaction = new Transaction.TransactionBuilder(command.getTimestamp(),
                 "Savings withdrawal", accountIBAN, "spending")
@@ -99,4 +98,11 @@ public class WithdrawSavingsCommand implements Command {
         user.addTransaction(transaction);
         user.addTransaction(transaction);
     }
+
+    private static void addInsufficientFunds(final User user, final CommandInput command) {
+        Transaction transaction = new Transaction.TransactionBuilder(command.getTimestamp(),
+                "Insufficient funds", command.getAccount(), "error")
+                .build();
+        user.addTransaction(transaction);
+    }
 }
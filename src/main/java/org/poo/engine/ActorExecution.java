@@ -0,0 +1,243 @@
+package org.poo.engine;
+
+import org.poo.commands.Command;
+import org.poo.commands.CommandExecutor;
+import org.poo.fileio.BufferedOutputSink;
+import org.poo.fileio.CommandInput;
+import org.poo.fileio.OutputSink;
+import org.poo.models.User;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes the commands with one actor for each user, on virtual threads
+ * (-Dbank.executor=actors).
+ *
+ * Every user has a mailbox; an actor with messages is drained by a virtual thread, one
+ * message after the other, and gives the thread back when the mailbox is empty. The
+ * footprint of a command (see FootprintAnalyzer) says where it is sent:
+ * - a command of one user is a message to the actor of that user;
+ * - a command of several users (a transfer between two users, a payment with the card of
+ *   another user) is a message to each of them. Every actor that reaches it reports to the
+ *   message and stops; the last one to report runs the command and then resumes the
+ *   others. No thread waits for another one while they exchange the message;
+ * - a command of the split payments is a message to the actor of the pending payments and
+ *   to the actors of the users it touches: all the users of the payment when it is created
+ *   or completed, none for the other responses. That actor keeps the split payments in the
+ *   order of the input; the other actors go on with their own commands;
+ * - a global command waits until all the actors are done and runs on the submitting thread;
+ * - a command that touches no user runs directly on the submitting thread.
+ * The mailboxes receive the messages in the order of the input, so two commands of the same
+ * users always run in that order. The results go through a reorder buffer, keyed by the
+ * sequence number of the command, so the output is the same as in a serial run.
+ * The commands that only read the bank are run on snapshots by a SnapshotReader, so an
+ * actor does not keep its users while a report is built.
+ */
+public final class ActorExecution implements ExecutionStrategy {
+    private static final int OUTPUT_WINDOW = 4096;
+
+    private final BankEngine engine;
+    private final FootprintAnalyzer analyzer;
+    private final OrderedOutputCommitter committer;
+    private final SnapshotReader snapshots;
+    private final Map<User, Actor> actors = new IdentityHashMap<>();
+    // Receives every command of the split payments, which share the pending payments
+    private final Actor splitPayments = new Actor();
+    private final ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+    // The number of commands sent to the actors that did not finish yet
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Object idle = new Object();
+    private final AtomicLong messages = new AtomicLong();
+    private long nextSequence;
+
+    public ActorExecution(final BankEngine engine, final OutputSink output,
+                          final int readers) {
+        this.engine = engine;
+        this.analyzer = new FootprintAnalyzer(engine.getUsers(), true);
+        this.committer = new OrderedOutputCommitter(output, OUTPUT_WINDOW);
+        this.snapshots = new SnapshotReader(engine, committer, readers);
+        for (User user : engine.getUsers()) {
+            actors.put(user, new Actor());
+        }
+    }
+
+    @Override
+    public void submit(final CommandInput command) throws IOException {
+        try {
+            committer.reserve();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while submitting the commands", e);
+        }
+        CommandFootprint footprint = analyzer.analyze(command);
+        Message message = new Message(nextSequence++, command, footprint);
+
+        if (footprint.isGlobal()) {
+            awaitIdle();
+            message.run();
+            analyzer.invalidate();
+            return;
+        }
+
+        Set<Actor> receivers = new LinkedHashSet<>();
+        if (footprint.touchesSplitPayments()) {
+            receivers.add(splitPayments);
+        }
+        for (User user : footprint.getUsers()) {
+            receivers.add(actors.get(user));
+        }
+        if (receivers.isEmpty()) {
+            message.run();
+            return;
+        }
+        message.participants.addAll(receivers);
+        message.missing.set(receivers.size());
+        inFlight.incrementAndGet();
+        for (Actor actor : receivers) {
+            actor.send(message);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            awaitIdle();
+        } finally {
+            threads.close();
+            snapshots.close();
+        }
+        committer.checkFailure();
+    }
+
+    /**
+     * Getter for the number of messages delivered to the mailboxes so far. A command of
+     * several users counts once for each of them.
+     * @return the number of messages
+     */
+    public long getMessages() {
+        return messages.get();
+    }
+
+    /**
+     * Waits until every command sent to the actors has finished.
+     * @throws IOException if the thread was interrupted while waiting
+     */
+    private void awaitIdle() throws IOException {
+        synchronized (idle) {
+            while (inFlight.get() > 0) {
+                try {
+                    idle.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the actors", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Called after a command of the actors has run.
+     */
+    private void finished() {
+        if (inFlight.decrementAndGet() == 0) {
+            synchronized (idle) {
+                idle.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * The mailbox of one user. At most one thread drains it at a time: the flag is set
+     * while a thread is on it, or while the actor waits for the others at a message
+     * of several users.
+     */
+    private final class Actor {
+        private final Queue<Message> mailbox = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean active = new AtomicBoolean();
+
+        void send(final Message message) {
+            mailbox.add(message);
+            messages.incrementAndGet();
+            if (active.compareAndSet(false, true)) {
+                threads.execute(this::drain);
+            }
+        }
+
+        /**
+         * Runs the messages of the mailbox, in order, until it is empty or the actor has
+         * to wait at a message of several users.
+         */
+        void drain() {
+            while (true) {
+                Message message = mailbox.peek();
+                if (message == null) {
+                    active.set(false);
+                    // A message sent after the peek and before the flag was cleared
+                    if (mailbox.isEmpty() || !active.compareAndSet(false, true)) {
+                        return;
+                    }
+                    continue;
+                }
+                if (message.missing.decrementAndGet() > 0) {
+                    // The last participant to arrive runs it and resumes this actor
+                    return;
+                }
+                message.run();
+                for (Actor participant : message.participants) {
+                    participant.mailbox.poll();
+                    if (participant != this) {
+                        threads.execute(participant::drain);
+                    }
+                }
+                finished();
+            }
+        }
+    }
+
+    /**
+     * A submitted command, with the actors it is sent to.
+     */
+    private final class Message {
+        private final long sequence;
+        private final CommandInput command;
+        private final Command handler;
+        private final CommandFootprint footprint;
+        private final List<Actor> participants = new ArrayList<>();
+        private final AtomicInteger missing = new AtomicInteger();
+
+        Message(final long sequence, final CommandInput command,
+                final CommandFootprint footprint) {
+            this.sequence = sequence;
+            this.command = command;
+            this.handler = CommandExecutor.resolve(command);
+            this.footprint = footprint;
+        }
+
+        /**
+         * Runs the command and passes its output to the reorder buffer. A command that only
+         * reads is handed to the snapshot readers, with a snapshot taken now.
+         */
+        void run() {
+            if (SnapshotReader.isReadOnly(command)) {
+                snapshots.read(sequence, handler, command, footprint);
+                return;
+            }
+            BufferedOutputSink buffer = new BufferedOutputSink();
+            new CommandExecutor(engine, buffer).executeSafely(handler, command);
+            committer.complete(sequence, buffer.getNodes());
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package org.poo.engine;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.poo.commands.CommandContext;
+import org.poo.fileio.CommerciantInput;
+import org.poo.fileio.ExchangeInput;
+import org.poo.fileio.OutputSink;
+import org.poo.fileio.UserInput;
+import org.poo.models.PaymentProcessor;
+import org.poo.models.User;
+import org.poo.services.Commerciant;
+import org.poo.services.CurrencyConverter;
+import org.poo.services.ExchangeRate;
+import org.poo.utils.IdGenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One independent instance of the bank.
+ * The engine owns all the mutable state of a run: the users with their accounts,
+ * the commerciants, the exchange rates, the pending split payments (with their responses)
+ * and the generators of the IBANs and card numbers. Nothing is shared between engines,
+ * so several banks can run side by side on different threads of the same JVM.
+ *
+ * The engine is created with the Builder, from the sections of an input file.
+ */
+public final class BankEngine {
+    private final List<User> users;
+    private final List<Commerciant> commerciants;
+    private final CurrencyConverter currencyConverter;
+    private final ObjectMapper objectMapper;
+    private final PaymentProcessor paymentProcessor;
+    private final IdGenerator idGenerator;
+    private final Builder origin;
+
+    private BankEngine(final Builder builder) {
+        // Each engine gets its own users, so the same builder can build several engines
+        users = new ArrayList<>();
+        for (User user : builder.users) {
+            users.add(new User(user));
+        }
+        commerciants = builder.commerciants;
+        currencyConverter = new CurrencyConverter(builder.exchangeRates);
+        objectMapper = builder.objectMapper;
+        paymentProcessor = new PaymentProcessor(builder.splitPaymentTimeout);
+        idGenerator = new IdGenerator();
+        origin = builder;
+    }
+
+    /**
+     * Create the context used to execute commands against this engine.
+     * @param output where the results of the commands are added
+     * @return the context
+     */
+    public CommandContext createContext(final OutputSink output) {
+        return new CommandContext(this, output);
+    }
+
+    /**
+     * Getter for the users of the bank.
+     * @return the users
+     */
+    public List<User> getUsers() {
+        return users;
+    }
+
+    /**
+     * Getter for the commerciants of the bank.
+     * @return the commerciants
+     */
+    public List<Commerciant> getCommerciants() {
+        return commerciants;
+    }
+
+    /**
+     * Getter for the currency converter of the bank.
+     * @return the currency converter
+     */
+    public CurrencyConverter getCurrencyConverter() {
+        return currencyConverter;
+    }
+
+    /**
+     * Getter for the mapper used to build the output nodes.
+     * @return the object mapper
+     */
+    public ObjectMapper getObjectMapper() {
+        return objectMapper;
+    }
+
+    /**
+     * Getter for the processor of the pending split payments.
+     * @return the payment processor
+     */
+    public PaymentProcessor getPaymentProcessor() {
+        return paymentProcessor;
+    }
+
+    /**
+     * Getter for the time the split payments wait for the responses.
+     * @return the timeout, or 0 if the payments never expire
+     */
+    public int getSplitPaymentTimeout() {
+        return origin.splitPaymentTimeout;
+    }
+
+    /**
+     * Getter for the generator of IBANs and card numbers.
+     * @return the id generator
+     */
+    public IdGenerator getIdGenerator() {
+        return idGenerator;
+    }
+
+    public static class Builder {
+        private final ObjectMapper objectMapper;
+        private final List<User> users = new ArrayList<>();
+        private final List<ExchangeRate> exchangeRates = new ArrayList<>();
+        private final List<Commerciant> commerciants = new ArrayList<>();
+        private int splitPaymentTimeout;
+
+        public Builder(final ObjectMapper objectMapper) {
+            this.objectMapper = objectMapper;
+        }
+
+        /**
+         * Create the users (with empty accounts) from the input data.
+         * @param userInputs the users from the input (can be null)
+         * @return the engine builder
+         */
+        public Builder users(final UserInput[] userInputs) {
+            if (userInputs != null) {
+                for (UserInput userInput : userInputs) {
+                    users.add(new User(userInput.getFirstName(),
+                            userInput.getLastName(),
+                            userInput.getEmail(),
+                            userInput.getBirthDate(),
+                            userInput.getOccupation()));
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Extract the list of exchange rates from the input data.
+         * @param exchangeInputs the exchange rates from the input (can be null)
+         * @return the engine builder
+         */
+        public Builder exchangeRates(final ExchangeInput[] exchangeInputs) {
+            if (exchangeInputs != null) {
+                for (ExchangeInput exchangeInput : exchangeInputs) {
+                    exchangeRates.add(new ExchangeRate(
+                            exchangeInput.getFrom(),
+                            exchangeInput.getTo(),
+                            exchangeInput.getRate()
+                    ));
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Extract the list of commerciants from the input data.
+         * @param commerciantInputs the commerciants from the input (can be null)
+         * @return the engine builder
+         */
+        public Builder commerciants(final CommerciantInput[] commerciantInputs) {
+            if (commerciantInputs != null) {
+                for (CommerciantInput commercInput : commerciantInputs) {
+                    commerciants.add(new Commerciant(
+                            commercInput.getCommerciant(),
+                            commercInput.getId(),
+                            commercInput.getAccount(),
+                            commercInput.getType(),
+                            commercInput.getCashbackStrategy()
+                    ));
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Set the time the split payments wait for the responses of the users. A payment
+         * that is still pending when a command with a timestamp at least this much later
+         * comes is rejected.
+         * @param timeout the number of timestamps, or 0 (the default) for no limit
+         * @return the engine builder
+         */
+        public Builder splitPaymentTimeout(final int timeout) {
+            this.splitPaymentTimeout = Math.max(0, timeout);
+            return this;
+        }
+
+        /**
+         * Build the engine. Every call returns a new, independent engine.
+         * @return the new engine
+         */
+        public BankEngine build() {
+            return new BankEngine(this);
+        }
+    }
+}
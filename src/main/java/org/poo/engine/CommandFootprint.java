@@ -0,0 +1,78 @@
+package org.poo.engine;
+
+import org.poo.models.User;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The users whose accounts and transactions a command can read or change.
+ * A command with an empty footprint only adds to the output. A global command
+ * can touch anything, so it has to run while no other command is running.
+ * The commands of the split payments also use the pending payments of the bank, which
+ * are shared by all of them (see FootprintAnalyzer(List, boolean)).
+ */
+public final class CommandFootprint {
+    /** Footprint of the commands that do not touch any user. */
+    public static final CommandFootprint NONE = new CommandFootprint(List.of(), false, false);
+    /** Footprint of the commands that can touch the whole bank. */
+    public static final CommandFootprint GLOBAL = new CommandFootprint(List.of(), true, false);
+
+    private final List<User> users;
+    private final boolean global;
+    private final boolean splitPayments;
+
+    private CommandFootprint(final List<User> users, final boolean global,
+                             final boolean splitPayments) {
+        this.users = users;
+        this.global = global;
+        this.splitPayments = splitPayments;
+    }
+
+    /**
+     * Creates the footprint of a command that only touches the given users.
+     * @param users the users, in any order (duplicates are allowed)
+     * @return the footprint
+     */
+    public static CommandFootprint of(final List<User> users) {
+        if (users.isEmpty()) {
+            return NONE;
+        }
+        return new CommandFootprint(Collections.unmodifiableList(users), false, false);
+    }
+
+    /**
+     * Creates the footprint of a command of the split payments, which uses the pending
+     * payments of the bank and the given users.
+     * @param users the users, in any order (duplicates are allowed); can be empty
+     * @return the footprint
+     */
+    public static CommandFootprint ofSplitPayment(final List<User> users) {
+        return new CommandFootprint(Collections.unmodifiableList(users), false, true);
+    }
+
+    /**
+     * Getter for the users touched by the command.
+     * @return the users; empty for NONE and GLOBAL
+     */
+    public List<User> getUsers() {
+        return users;
+    }
+
+    /**
+     * Checks if the command can touch any part of the bank.
+     * @return true if the command has to run alone
+     */
+    public boolean isGlobal() {
+        return global;
+    }
+
+    /**
+     * Checks if the command uses the pending split payments of the bank.
+     * @return true if the command has to run after the previous commands of the split
+     *         payments and before the next ones
+     */
+    public boolean touchesSplitPayments() {
+        return splitPayments;
+    }
+}
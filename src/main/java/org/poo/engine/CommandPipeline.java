@@ -0,0 +1,232 @@
+package org.poo.engine;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.poo.fileio.CommandInput;
+import org.poo.fileio.OutputSink;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Runs the reading of the commands and the writing of the output on their own threads
+ * (-Dbank.pipeline=true), so the JSON work overlaps with the execution of the commands.
+ *
+ * There are three stages, connected by two bounded RingQueues:
+ * - the parser thread pulls the commands from the input reader into the first queue;
+ * - the executor stage (the thread that calls commands(), and the threads of its
+ *   ExecutionStrategy) runs them and adds the results to output();
+ * - the serializer thread takes the results from the second queue and writes them to
+ *   the real output, in the order they were added.
+ * A full queue makes the stage before it wait, so at most the capacity of each queue is
+ * kept in memory. The statistics of the stages are available after close.
+ */
+public final class CommandPipeline implements Closeable {
+    private static final CommandInput END_OF_COMMANDS = new CommandInput();
+    private static final JsonNode END_OF_OUTPUT = new ObjectNode(JsonNodeFactory.instance);
+
+    private final Iterator<CommandInput> source;
+    private final OutputSink output;
+    private final RingQueue<CommandInput> commandQueue;
+    private final RingQueue<JsonNode> outputQueue;
+    private final Thread parser;
+    private final Thread serializer;
+    private final Iterator<CommandInput> commands = new QueuedCommands();
+    private final OutputSink queuedOutput = new QueuedOutput();
+    private final long start = System.nanoTime();
+    private volatile RuntimeException parserFailure;
+    private volatile RuntimeException serializerFailure;
+    private List<StageStats> stats = List.of();
+
+    // Written by the parser thread
+    private long parsed;
+    private long parserElapsed;
+    // Written by the executor stage
+    private long executed;
+    private long executorEnd;
+    // Written by the serializer thread
+    private long written;
+    private long serializerElapsed;
+
+    public CommandPipeline(final Iterator<CommandInput> source, final OutputSink output,
+                           final int capacity) {
+        this.source = source;
+        this.output = output;
+        this.commandQueue = new RingQueue<>(capacity);
+        this.outputQueue = new RingQueue<>(capacity);
+        this.parser = Thread.ofPlatform().name("bank-pipeline-parser").daemon()
+                .start(this::parse);
+        this.serializer = Thread.ofPlatform().name("bank-pipeline-serializer").daemon()
+                .start(this::serialize);
+    }
+
+    /**
+     * The commands of the input, in order, as they come out of the parser stage.
+     * They must be consumed by a single thread.
+     * @return the iterator over the queued commands
+     */
+    public Iterator<CommandInput> commands() {
+        return commands;
+    }
+
+    /**
+     * The output of the executor stage. The nodes are written by the serializer thread;
+     * closing this sink does nothing, the real output is finished by close.
+     * @return the sink that queues the nodes
+     */
+    public OutputSink output() {
+        return queuedOutput;
+    }
+
+    /**
+     * Getter for the statistics of the parser, executor and serializer stages.
+     * @return the statistics, empty before the pipeline is closed
+     */
+    public List<StageStats> getStats() {
+        return stats;
+    }
+
+    /**
+     * Loop of the parser thread.
+     */
+    private void parse() {
+        long begin = System.nanoTime();
+        try {
+            while (source.hasNext()) {
+                if (!commandQueue.put(source.next())) {
+                    return;
+                }
+                parsed++;
+            }
+        } catch (RuntimeException e) {
+            parserFailure = e;
+        } finally {
+            parserElapsed = System.nanoTime() - begin;
+            commandQueue.put(END_OF_COMMANDS);
+        }
+    }
+
+    /**
+     * Loop of the serializer thread. After a failure the nodes are still taken from the
+     * queue, so the executor stage never waits for a stage that stopped.
+     */
+    private void serialize() {
+        long begin = System.nanoTime();
+        JsonNode node = outputQueue.take();
+        while (node != END_OF_OUTPUT && node != null) {
+            if (serializerFailure == null) {
+                try {
+                    output.add(node);
+                    written++;
+                } catch (RuntimeException e) {
+                    serializerFailure = e;
+                }
+            }
+            node = outputQueue.take();
+        }
+        serializerElapsed = System.nanoTime() - begin;
+    }
+
+    /**
+     * Waits for the serializer to write all the queued nodes and stops the parser, if the
+     * commands were not all consumed. The real output is not closed.
+     * @throws IOException if the output could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        if (executorEnd == 0) {
+            executorEnd = System.nanoTime();
+        }
+        commandQueue.close();
+        synchronized (queuedOutput) {
+            outputQueue.put(END_OF_OUTPUT);
+        }
+        try {
+            parser.join();
+            serializer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the pipeline", e);
+        }
+
+        stats = List.of(
+                new StageStats("parser", parsed, parserElapsed,
+                        commandQueue.getPutWaitNanos(), null),
+                new StageStats("executor", executed, executorEnd - start,
+                        commandQueue.getTakeWaitNanos() + outputQueue.getPutWaitNanos(),
+                        commandQueue),
+                new StageStats("serializer", written, serializerElapsed,
+                        outputQueue.getTakeWaitNanos(), outputQueue));
+
+        if (serializerFailure instanceof UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (serializerFailure != null) {
+            throw serializerFailure;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CommandPipeline" + stats;
+    }
+
+    /**
+     * The consumer side of the command queue.
+     */
+    private final class QueuedCommands implements Iterator<CommandInput> {
+        private CommandInput next;
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = commandQueue.take();
+            }
+            if (next == END_OF_COMMANDS || next == null) {
+                if (executorEnd == 0) {
+                    executorEnd = System.nanoTime();
+                }
+                if (parserFailure != null) {
+                    throw parserFailure;
+                }
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public CommandInput next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            CommandInput command = next;
+            next = null;
+            executed++;
+            return command;
+        }
+    }
+
+    /**
+     * The producer side of the output queue. The executors can add nodes from several
+     * threads, one at a time.
+     */
+    private final class QueuedOutput implements OutputSink {
+        @Override
+        public synchronized void add(final JsonNode node) {
+            if (serializerFailure != null) {
+                throw serializerFailure;
+            }
+            outputQueue.put(node);
+        }
+
+        @Override
+        public void close() {
+            // The pipeline finishes the real output
+        }
+    }
+}
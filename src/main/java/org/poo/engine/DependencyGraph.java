@@ -0,0 +1,153 @@
+package org.poo.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dependency graph of a known list of commands, and the level-parallel schedule built
+ * from it.
+ *
+ * Two commands depend on each other when their footprints share a user (every IBAN and
+ * card belongs to a user), when both of them use the pending split payments, or when one
+ * of them is global. Each command is placed on the level after the last command it depends
+ * on, so the commands of the same level touch different users and can run at the same
+ * time, while the commands of the same user keep the order of the input.
+ *
+ * The graph is built from the footprints of FootprintAnalyzer, without running anything.
+ * A footprint depends on the accounts and cards that exist when the command runs, which
+ * only change in global commands, so the footprints of the commands between two global
+ * commands can all be found before the first of them runs (see ScheduledExecution).
+ */
+public final class DependencyGraph {
+    private static final int NONE = -1;
+    // Stands for the pending split payments, shared by all the commands that use them
+    private static final Object SPLIT_PAYMENTS = new Object();
+
+    private final int[] levels;
+    private final List<List<Integer>> schedule = new ArrayList<>();
+    private long edges;
+
+    private DependencyGraph(final List<CommandFootprint> footprints) {
+        levels = new int[footprints.size()];
+        // The last command of each user, and of the split payments
+        Map<Object, Integer> lastCommandOfUser = new IdentityHashMap<>();
+        int lastGlobal = NONE;
+        // The deepest level used since the last global command
+        int deepestLevel = 0;
+
+        for (int i = 0; i < footprints.size(); i++) {
+            CommandFootprint footprint = footprints.get(i);
+            int level;
+            if (footprint.isGlobal()) {
+                // After everything that ran since the previous global command
+                level = deepestLevel + 1;
+                int sinceLastGlobal = i - lastGlobal - 1;
+                if (sinceLastGlobal > 0) {
+                    edges += sinceLastGlobal;
+                } else if (lastGlobal != NONE) {
+                    edges++;
+                }
+                lastGlobal = i;
+                lastCommandOfUser.clear();
+            } else {
+                level = lastGlobal == NONE ? 1 : levels[lastGlobal] + 1;
+                edges += lastGlobal == NONE ? 0 : 1;
+                List<Object> used = new ArrayList<>(footprint.getUsers());
+                if (footprint.touchesSplitPayments()) {
+                    used.add(SPLIT_PAYMENTS);
+                }
+                for (Object user : used) {
+                    Integer previous = lastCommandOfUser.put(user, i);
+                    if (previous != null && previous != i) {
+                        level = Math.max(level, levels[previous] + 1);
+                        edges++;
+                    }
+                }
+            }
+            levels[i] = level;
+            deepestLevel = Math.max(deepestLevel, level);
+            while (schedule.size() < level) {
+                schedule.add(new ArrayList<>());
+            }
+            schedule.get(level - 1).add(i);
+        }
+    }
+
+    /**
+     * Builds the graph of a list of commands from their footprints.
+     * @param footprints the footprint of each command, in the order of the input
+     * @return the dependency graph
+     */
+    public static DependencyGraph of(final List<CommandFootprint> footprints) {
+        return new DependencyGraph(footprints);
+    }
+
+    /**
+     * Getter for the schedule: the indexes of the commands on each level, in input order.
+     * @return the levels, starting with the first one
+     */
+    public List<List<Integer>> getSchedule() {
+        return Collections.unmodifiableList(schedule);
+    }
+
+    /**
+     * Getter for the number of commands in the graph.
+     * @return the number of commands
+     */
+    public int getCommandCount() {
+        return levels.length;
+    }
+
+    /**
+     * Getter for the number of edges kept in the graph. Only the edge to the last command
+     * of each user is counted, the older ones follow from it; a global command has an edge
+     * from every command since the previous global one.
+     * @return the number of edges
+     */
+    public long getEdgeCount() {
+        return edges;
+    }
+
+    /**
+     * The length of the longest chain of dependent commands, which is the number of levels.
+     * @return the length of the critical path
+     */
+    public int getCriticalPathLength() {
+        return schedule.size();
+    }
+
+    /**
+     * The number of commands on the widest level.
+     * @return the maximum number of commands that can run at the same time
+     */
+    public int getMaxWidth() {
+        int width = 0;
+        for (List<Integer> level : schedule) {
+            width = Math.max(width, level.size());
+        }
+        return width;
+    }
+
+    /**
+     * The speedup over a serial run with enough threads, if all commands took the same time.
+     * @return the number of commands divided by the length of the critical path
+     */
+    public double getSpeedup() {
+        if (schedule.isEmpty()) {
+            return 1;
+        }
+        return (double) levels.length / schedule.size();
+    }
+
+    @Override
+    public String toString() {
+        return "DependencyGraph{commands=" + getCommandCount()
+                + ", edges=" + edges
+                + ", criticalPath=" + getCriticalPathLength()
+                + ", maxWidth=" + getMaxWidth()
+                + ", speedup=" + String.format("%.2f", getSpeedup()) + "}";
+    }
+}
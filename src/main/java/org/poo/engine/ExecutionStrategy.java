@@ -0,0 +1,29 @@
+package org.poo.engine;
+
+import org.poo.fileio.CommandInput;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Defines how the commands of a run are executed against a BankEngine.
+ * The commands are submitted in the order of the input. Whatever the strategy does
+ * internally, the output must be the same as when the commands run one after the other.
+ */
+public interface ExecutionStrategy extends Closeable {
+
+    /**
+     * Submits the next command of the input.
+     * @param command the command to be executed
+     * @throws IOException if the strategy was interrupted while waiting for a command
+     */
+    void submit(CommandInput command) throws IOException;
+
+    /**
+     * Waits for all the submitted commands to finish and releases the threads of the
+     * strategy. The output is complete when this method returns.
+     * @throws IOException if the output could not be written
+     */
+    @Override
+    void close() throws IOException;
+}
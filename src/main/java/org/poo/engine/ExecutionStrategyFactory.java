@@ -0,0 +1,58 @@
+package org.poo.engine;
+
+import org.poo.fileio.OutputSink;
+
+import java.io.File;
+
+/**
+ * Factory class for creating ExecutionStrategy objects.
+ */
+public final class ExecutionStrategyFactory {
+    private static final String JOURNAL_PROPERTY = "bank.journal";
+    private static final int RING_SIZE = 1024;
+
+    // Private constructor to prevent instantiation
+    private ExecutionStrategyFactory() {
+        throw new UnsupportedOperationException("ExecutionStrategyFactory cannot be instantiated");
+    }
+
+    /**
+     * Creates an ExecutionStrategy based on the given mode.
+     * The split payments that expire follow the timestamps of the commands in order,
+     * so an engine with a split payment timeout always runs the commands serially.
+     * @param mode the execution mode ("serial", "sharded", "optimistic", "scheduled",
+     *             "ringbuffer", "actors")
+     * @param engine the engine the commands are executed against
+     * @param output where the results of the commands are written
+     * @return an ExecutionStrategy instance corresponding to the given mode
+     */
+    public static ExecutionStrategy createExecutionStrategy(final String mode,
+                                                            final BankEngine engine,
+                                                            final OutputSink output) {
+        if (engine.getSplitPaymentTimeout() > 0) {
+            return new SerialExecution(engine, output);
+        }
+        return switch (mode.toLowerCase()) {
+            case "sharded" -> new ShardedExecution(engine, output,
+                    Runtime.getRuntime().availableProcessors());
+            case "optimistic" -> new OptimisticExecution(engine, output,
+                    Runtime.getRuntime().availableProcessors());
+            case "scheduled" -> new ScheduledExecution(engine, output,
+                    Runtime.getRuntime().availableProcessors());
+            case "ringbuffer" -> new RingBufferExecution(engine, output, RING_SIZE,
+                    journalFile());
+            case "actors" -> new ActorExecution(engine, output,
+                    Runtime.getRuntime().availableProcessors());
+            default -> new SerialExecution(engine, output);
+        };
+    }
+
+    /**
+     * The journal of the ring buffer, set with -Dbank.journal=path.
+     * @return the journal file, or null if the commands are not journaled
+     */
+    private static File journalFile() {
+        String path = System.getProperty(JOURNAL_PROPERTY);
+        return path == null ? null : new File(path);
+    }
+}
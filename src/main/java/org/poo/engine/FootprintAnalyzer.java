@@ -0,0 +1,278 @@
+package org.poo.engine;
+
+import org.poo.commands.CommandType;
+import org.poo.fileio.CommandInput;
+import org.poo.models.Account;
+import org.poo.models.Card;
+import org.poo.models.User;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Finds, before a command runs, the users whose accounts and transactions it can touch.
+ *
+ * The footprint is resolved against the current state of the bank, so it must be asked
+ * in the order of the input. The accounts, the cards, the associates and the roles only
+ * change in global commands; the caller has to invalidate the analyzer after each of them.
+ * A command is global when it generates IBANs or card numbers (their order must not change),
+ * when it works with the split payments or when it reads the whole bank.
+ *
+ * An analyzer created with routeSplitPayments set gives the commands of the split payments
+ * a footprint of their own instead (see CommandFootprint.ofSplitPayment). Which payment is
+ * created, and which response completes it, only depends on the commands and on the
+ * accounts that exist, so the analyzer follows the pending payments the same way the
+ * PaymentProcessor does:
+ * - a split payment reads the accounts of its users;
+ * - a response that completes a payment (a reject, or the last accept) debits or adds
+ *   transactions to all the users of that payment;
+ * - any other response only changes the pending payments.
+ */
+public final class FootprintAnalyzer {
+    private final List<User> users;
+    private final Map<String, User> usersByEmail = new HashMap<>();
+    private final Map<String, Account> accountsByIban = new HashMap<>();
+    private final Map<String, User> ownersByIban = new HashMap<>();
+    private final Map<String, Account> accountsByCard = new HashMap<>();
+    private final boolean routeSplitPayments;
+    // The split payments that are still pending, by user and type, oldest first
+    private final Map<PendingKey, Deque<PendingPayment>> pending = new HashMap<>();
+    private boolean indexed;
+
+    public FootprintAnalyzer(final List<User> users) {
+        this(users, false);
+    }
+
+    /**
+     * Creates an analyzer that can also give the split payments their own footprint.
+     * @param users the users of the bank
+     * @param routeSplitPayments false if the split payments are global commands
+     */
+    public FootprintAnalyzer(final List<User> users, final boolean routeSplitPayments) {
+        this.users = users;
+        this.routeSplitPayments = routeSplitPayments;
+        for (User user : users) {
+            usersByEmail.putIfAbsent(user.getEmail(), user);
+        }
+    }
+
+    /**
+     * Marks the indexes as outdated, after a command that could change the accounts,
+     * the cards or the associates of the users.
+     */
+    public void invalidate() {
+        indexed = false;
+    }
+
+    /**
+     * Finds the footprint of a command.
+     * @param command the command from the input
+     * @return the footprint of the command
+     */
+    public CommandFootprint analyze(final CommandInput command) {
+        buildIndexes();
+        return switch (CommandType.fromCommandName(command.getCommand())) {
+            case PRINT_USERS, ADD_ACCOUNT, CREATE_CARD, CREATE_ONE_TIME_CARD, DELETE_ACCOUNT,
+                 DELETE_CARD, ADD_BUSINESS_ASSOCIATE, TOP_SPENDERS_REPORT, CONSOLIDATED_REPORT ->
+                    CommandFootprint.GLOBAL;
+            case SPLIT_PAYMENT -> routeSplitPayments
+                    ? splitPayment(command) : CommandFootprint.GLOBAL;
+            case ACCEPT_SPLIT_PAYMENT -> routeSplitPayments
+                    ? splitResponse(command, true) : CommandFootprint.GLOBAL;
+            case REJECT_SPLIT_PAYMENT -> routeSplitPayments
+                    ? splitResponse(command, false) : CommandFootprint.GLOBAL;
+            case PRINT_TRANSACTIONS, SET_ALIAS, CASH_WITHDRAWAL ->
+                    footprint(usersByEmail.get(command.getEmail()));
+            case ADD_FUNDS -> footprint(usersByEmail.get(command.getEmail()),
+                    ownersByIban.get(command.getAccount()));
+            case SET_MINIMUM_BALANCE, REPORT, SPENDINGS_REPORT, ADD_INTEREST,
+                 CHANGE_INTEREST_RATE, WITHDRAW_SAVINGS, UPGRADE_PLAN, CHANGE_SPENDING_LIMIT,
+                 CHANGE_DEPOSIT_LIMIT -> footprint(ownersByIban.get(command.getAccount()));
+            case CHECK_CARD_STATUS -> footprint(ownerOfCard(command.getCardNumber()));
+            case PAY_ONLINE -> payOnline(command);
+            case SEND_MONEY -> sendMoney(command);
+            case BUSINESS_REPORT -> businessReport(command);
+            default -> CommandFootprint.NONE;
+        };
+    }
+
+    /**
+     * The payer, the owner of the account of the card and, for employees and managers,
+     * the owner of the business account whose limits are checked.
+     * Paying with a one time card creates a new card, so that payment is global.
+     */
+    private CommandFootprint payOnline(final CommandInput command) {
+        User user = usersByEmail.get(command.getEmail());
+        if (command.getAmount() <= 0 || user == null) {
+            return CommandFootprint.NONE;
+        }
+        Account cardAccount = accountsByCard.get(command.getCardNumber());
+        if (cardAccount == null) {
+            return footprint(user);
+        }
+        Card card = cardAccount.findCardByNumber(command.getCardNumber());
+        if (card.getType().equals("one time pay")) {
+            return CommandFootprint.GLOBAL;
+        }
+        User limitsOwner = null;
+        if (user.getOwnerAccount() != null) {
+            limitsOwner = ownersByIban.get(user.getOwnerAccount().getIban());
+        }
+        return footprint(user, ownersByIban.get(cardAccount.getIban()), limitsOwner);
+    }
+
+    /**
+     * The sender, the owner of the sender account and the owner of the receiver account.
+     * A sender given by alias is global, because the alias is searched in every account.
+     */
+    private CommandFootprint sendMoney(final CommandInput command) {
+        if (!accountsByIban.containsKey(command.getAccount())) {
+            return CommandFootprint.GLOBAL;
+        }
+        Account receiverAccount = accountsByIban.get(command.getReceiver());
+        User receiverUser = null;
+        if (receiverAccount != null) {
+            receiverUser = usersByEmail.get(receiverAccount.getOwner());
+        }
+        return footprint(usersByEmail.get(command.getEmail()),
+                ownersByIban.get(command.getAccount()),
+                ownersByIban.get(command.getReceiver()), receiverUser);
+    }
+
+    /**
+     * The owner of the business account and all its associates, whose transactions
+     * are part of the report.
+     */
+    private CommandFootprint businessReport(final CommandInput command) {
+        Account account = accountsByIban.get(command.getAccount());
+        if (account == null) {
+            return CommandFootprint.NONE;
+        }
+        List<User> touched = new ArrayList<>();
+        touched.add(ownersByIban.get(account.getIban()));
+        for (String email : account.getAssociates().keySet()) {
+            touched.add(usersByEmail.get(email));
+        }
+        return footprint(touched.toArray(new User[0]));
+    }
+
+    /**
+     * The users of all the accounts of a new split payment, whose balances are read.
+     * A payment with an unknown account is not created and only adds an error.
+     */
+    private CommandFootprint splitPayment(final CommandInput command) {
+        Map<String, String> emailToAccount = new HashMap<>();
+        List<User> touched = new ArrayList<>();
+        for (String iban : command.getAccounts()) {
+            Account account = accountsByIban.get(iban);
+            if (account == null) {
+                return CommandFootprint.NONE;
+            }
+            emailToAccount.put(account.getOwner(), iban);
+            touched.add(ownersByIban.get(iban));
+            touched.add(usersByEmail.get(account.getOwner()));
+        }
+        touched.removeIf(Objects::isNull);
+
+        PendingPayment payment = new PendingPayment(command.getSplitPaymentType(),
+                emailToAccount, new HashSet<>(command.getAccounts()), touched);
+        for (String email : emailToAccount.keySet()) {
+            pending.computeIfAbsent(new PendingKey(email, payment.type()),
+                    key -> new ArrayDeque<>()).addLast(payment);
+        }
+        return CommandFootprint.ofSplitPayment(touched);
+    }
+
+    /**
+     * The users of the payment completed by a response, if there is one. The response
+     * is given to the pending payments of the user, oldest first, until one of them is
+     * completed, like in PaymentProcessor.processResponse.
+     */
+    private CommandFootprint splitResponse(final CommandInput command, final boolean accepted) {
+        String email = command.getEmail();
+        if (email == null || !usersByEmail.containsKey(email)) {
+            return CommandFootprint.NONE;
+        }
+        Deque<PendingPayment> queue = pending.get(
+                new PendingKey(email, command.getSplitPaymentType()));
+        if (queue == null) {
+            return CommandFootprint.ofSplitPayment(List.of());
+        }
+        for (PendingPayment payment : queue) {
+            String account = payment.emailToAccount().get(email);
+            // A reject, or the accept of the last account that did not accept yet
+            boolean completes = !accepted
+                    || payment.waiting().remove(account) && payment.waiting().isEmpty();
+            if (completes) {
+                removePending(payment);
+                return CommandFootprint.ofSplitPayment(payment.users());
+            }
+        }
+        return CommandFootprint.ofSplitPayment(List.of());
+    }
+
+    private void removePending(final PendingPayment payment) {
+        for (String email : payment.emailToAccount().keySet()) {
+            PendingKey key = new PendingKey(email, payment.type());
+            Deque<PendingPayment> queue = pending.get(key);
+            queue.removeIf(other -> other == payment);
+            if (queue.isEmpty()) {
+                pending.remove(key);
+            }
+        }
+    }
+
+    private User ownerOfCard(final String cardNumber) {
+        Account account = accountsByCard.get(cardNumber);
+        return account == null ? null : ownersByIban.get(account.getIban());
+    }
+
+    private static CommandFootprint footprint(final User... touched) {
+        return CommandFootprint.of(Arrays.stream(touched).filter(Objects::nonNull).toList());
+    }
+
+    /**
+     * Rebuilds the indexes if they were invalidated. The first match wins, like in
+     * the search methods of the User class.
+     */
+    private void buildIndexes() {
+        if (indexed) {
+            return;
+        }
+        accountsByIban.clear();
+        ownersByIban.clear();
+        accountsByCard.clear();
+        for (User user : users) {
+            for (Account account : user.getAccounts()) {
+                accountsByIban.putIfAbsent(account.getIban(), account);
+                ownersByIban.putIfAbsent(account.getIban(), user);
+                for (Card card : account.getCards()) {
+                    accountsByCard.putIfAbsent(card.getCardNumber(), account);
+                }
+            }
+        }
+        indexed = true;
+    }
+
+    /**
+     * The user and the type a response is given for.
+     */
+    private record PendingKey(String email, String type) {
+    }
+
+    /**
+     * A split payment that is still pending: the account of each user and the accounts
+     * that did not accept yet.
+     */
+    private record PendingPayment(String type, Map<String, String> emailToAccount,
+                                  Set<String> waiting, List<User> users) {
+    }
+}
@@ -0,0 +1,227 @@
+package org.poo.engine;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.poo.commands.CommandContext;
+import org.poo.commands.CommandExecutor;
+import org.poo.commands.CommandType;
+import org.poo.fileio.BufferedOutputSink;
+import org.poo.fileio.CommandInput;
+import org.poo.fileio.OutputSink;
+import org.poo.models.Account;
+import org.poo.models.User;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executes the commands speculatively, a window at a time (-Dbank.executor=optimistic).
+ *
+ * All the commands of a window run in parallel, each one on overlays of the users in its
+ * footprint, taken from the state at the start of the window (see User.overlay): the
+ * fields and the accounts are copied, the transactions are shared and the new ones are
+ * kept aside, so an overlay costs the same however long the history is. Then the window
+ * is committed in the order of the input. Every user has a version: the sequence number
+ * of the last command that wrote it. A command is still valid if none of the users it
+ * read was written by an earlier command of the window; the delta of its overlays is then
+ * applied to the originals (see User.copyStateFrom). Otherwise only that command is
+ * executed again, on the real state.
+ * Global commands close the window and run alone, like in a serial run.
+ *
+ * When the commands of a window touch different users (payments from different accounts),
+ * nothing is executed twice and the window scales with the number of threads.
+ */
+public final class OptimisticExecution implements ExecutionStrategy {
+    private static final int WINDOW_SIZE = 256;
+    private static final long NEVER_WRITTEN = -1;
+    // Commands that only read their users; their overlays are never committed
+    private static final Set<CommandType> READ_ONLY = EnumSet.of(CommandType.PRINT_TRANSACTIONS,
+            CommandType.REPORT, CommandType.SPENDINGS_REPORT, CommandType.BUSINESS_REPORT);
+
+    private final BankEngine engine;
+    private final OutputSink output;
+    private final FootprintAnalyzer analyzer;
+    private final ExecutorService workers;
+    private final Map<User, Integer> indexOfUser = new IdentityHashMap<>();
+    private final long[] versions;
+    private final List<Speculation> window = new ArrayList<>();
+    private long nextSequence;
+    private long reExecutions;
+
+    public OptimisticExecution(final BankEngine engine, final OutputSink output,
+                               final int threads) {
+        this.engine = engine;
+        this.output = output;
+        this.analyzer = new FootprintAnalyzer(engine.getUsers());
+        this.workers = Executors.newFixedThreadPool(Math.max(1, threads));
+        this.versions = new long[engine.getUsers().size()];
+        for (int i = 0; i < engine.getUsers().size(); i++) {
+            indexOfUser.put(engine.getUsers().get(i), i);
+            versions[i] = NEVER_WRITTEN;
+        }
+    }
+
+    @Override
+    public void submit(final CommandInput command) throws IOException {
+        CommandFootprint footprint = analyzer.analyze(command);
+        if (!footprint.isGlobal()) {
+            window.add(new Speculation(nextSequence++, command, footprint));
+            if (window.size() == WINDOW_SIZE) {
+                runWindow();
+            }
+            return;
+        }
+        runWindow();
+        nextSequence++;
+        new CommandExecutor(engine, output).executeSafely(command);
+        analyzer.invalidate();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            runWindow();
+        } finally {
+            workers.close();
+        }
+    }
+
+    /**
+     * Getter for the number of commands that had to be executed again.
+     * @return the number of re-executions so far
+     */
+    public long getReExecutions() {
+        return reExecutions;
+    }
+
+    /**
+     * Runs the current window in parallel and commits it in order.
+     */
+    private void runWindow() throws IOException {
+        if (window.isEmpty()) {
+            return;
+        }
+        try {
+            workers.invokeAll(new ArrayList<Callable<Void>>(window));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while running the commands", e);
+        }
+
+        for (Speculation speculation : window) {
+            List<JsonNode> nodes;
+            if (speculation.isValid()) {
+                nodes = speculation.commit();
+            } else {
+                reExecutions++;
+                BufferedOutputSink buffer = new BufferedOutputSink();
+                new CommandExecutor(engine, buffer).executeSafely(speculation.command);
+                nodes = buffer.getNodes();
+            }
+            if (!READ_ONLY.contains(CommandType.fromCommandName(
+                    speculation.command.getCommand()))) {
+                for (User user : speculation.footprint.getUsers()) {
+                    versions[indexOfUser.get(user)] = speculation.sequence;
+                }
+            }
+            for (JsonNode node : nodes) {
+                output.add(node);
+            }
+        }
+        window.clear();
+    }
+
+    /**
+     * One command of the window, with the overlays of its users and its buffered output.
+     */
+    private final class Speculation implements Callable<Void> {
+        private final long sequence;
+        private final CommandInput command;
+        private final CommandFootprint footprint;
+        private final Map<User, User> overlays = new IdentityHashMap<>();
+        private final long[] readVersions;
+        private final BufferedOutputSink buffer = new BufferedOutputSink();
+        private Exception failure;
+
+        Speculation(final long sequence, final CommandInput command,
+                    final CommandFootprint footprint) {
+            this.sequence = sequence;
+            this.command = command;
+            this.footprint = footprint;
+            this.readVersions = new long[footprint.getUsers().size()];
+        }
+
+        /**
+         * Executes the command on overlays of its users. The other users are only
+         * searched by email or IBAN, which never change, so they are shared.
+         */
+        @Override
+        public Void call() {
+            List<User> users = new ArrayList<>(engine.getUsers());
+            Map<String, Account> copiedAccounts = new HashMap<>();
+            for (int i = 0; i < readVersions.length; i++) {
+                User user = footprint.getUsers().get(i);
+                int index = indexOfUser.get(user);
+                readVersions[i] = versions[index];
+                User copy = overlays.computeIfAbsent(user, User::overlay);
+                users.set(index, copy);
+                for (Account account : copy.getAccounts()) {
+                    copiedAccounts.put(account.getIban(), account);
+                }
+            }
+            // An associate must see the copy of the business account, if there is one
+            for (User copy : overlays.values()) {
+                Account ownerAccount = copy.getOwnerAccount();
+                if (ownerAccount != null && copiedAccounts.containsKey(ownerAccount.getIban())) {
+                    copy.setOwnerAccount(copiedAccounts.get(ownerAccount.getIban()));
+                }
+            }
+
+            CommandContext context = new CommandContext(engine, users, buffer);
+            try {
+                new CommandExecutor(context).execute(command);
+            } catch (Exception e) {
+                failure = e;
+            }
+            return null;
+        }
+
+        /**
+         * Checks that no earlier command of the window wrote the users of this one.
+         * @return true if the result of the speculative run can be used
+         */
+        boolean isValid() {
+            for (int i = 0; i < readVersions.length; i++) {
+                int index = indexOfUser.get(footprint.getUsers().get(i));
+                if (versions[index] != readVersions[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Applies the changes of the overlays to the real users.
+         * @return the output of the command
+         */
+        List<JsonNode> commit() {
+            if (failure != null) {
+                CommandExecutor.logFailure(command, failure);
+            }
+            if (!READ_ONLY.contains(CommandType.fromCommandName(command.getCommand()))) {
+                for (Map.Entry<User, User> entry : overlays.entrySet()) {
+                    entry.getKey().copyStateFrom(entry.getValue());
+                }
+            }
+            return buffer.getNodes();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.poo.engine;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.poo.fileio.OutputSink;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Reorder buffer between commands that finish out of order and the real output.
+ * Every command gets a sequence number when it is submitted; its nodes are written
+ * only after the nodes of all the commands before it. At most a window of commands
+ * can be in flight, so a slow command cannot make the buffer grow without a limit.
+ */
+final class OrderedOutputCommitter {
+    private final OutputSink output;
+    private final Semaphore window;
+    private final Map<Long, List<JsonNode>> finished = new HashMap<>();
+    private long nextToWrite;
+    private IOException failure;
+
+    OrderedOutputCommitter(final OutputSink output, final int windowSize) {
+        this.output = output;
+        this.window = new Semaphore(windowSize);
+    }
+
+    /**
+     * Reserves a place in the window for a new command; blocks while the window is full.
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    void reserve() throws InterruptedException {
+        window.acquire();
+    }
+
+    /**
+     * Reserves a place in the window for a new command, if there is one.
+     * @return false if the window is full
+     */
+    boolean tryReserve() {
+        return window.tryAcquire();
+    }
+
+    /**
+     * Records the nodes of a finished command and writes every command that is now
+     * next in line.
+     * @param sequence the sequence number of the command
+     * @param nodes the nodes added by the command
+     */
+    synchronized void complete(final long sequence, final List<JsonNode> nodes) {
+        finished.put(sequence, nodes);
+        List<JsonNode> ready = finished.remove(nextToWrite);
+        while (ready != null) {
+            write(ready);
+            nextToWrite++;
+            window.release();
+            ready = finished.remove(nextToWrite);
+        }
+    }
+
+    /**
+     * Rethrows the first error of the output, if there was one.
+     * @throws IOException the error of the output
+     */
+    synchronized void checkFailure() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void write(final List<JsonNode> nodes) {
+        // After a failure the nodes are dropped, the window must still move on
+        if (failure != null) {
+            return;
+        }
+        try {
+            for (JsonNode node : nodes) {
+                output.add(node);
+            }
+        } catch (UncheckedIOException e) {
+            failure = e.getCause();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package org.poo.engine;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.poo.commands.CommandExecutor;
+import org.poo.fileio.BufferedOutputSink;
+import org.poo.fileio.CommandInput;
+import org.poo.fileio.OutputSink;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes the commands on one business logic thread, fed through a ring of reusable slots
+ * (-Dbank.executor=ringbuffer).
+ *
+ * The submitting thread writes each command into the next slot and publishes its sequence.
+ * Three consumers follow it around the ring, each one behind its own barrier:
+ * - the journal appends the command to the journal file (one JSON object per line), if
+ *   there is one (-Dbank.journal=path);
+ * - the business logic thread executes the commands that were journaled, one after the
+ *   other, into the output buffer of their slot;
+ * - the serializer writes the buffered nodes to the real output and frees the slot.
+ * Every sequence has a single writer and each consumer takes all the slots that are ready
+ * at once, so no lock is taken on the way. The slots, with their buffers and executors, are
+ * created once; a full ring makes the submitting thread wait for the serializer.
+ */
+public final class RingBufferExecution implements ExecutionStrategy {
+    private static final long OPEN = Long.MAX_VALUE;
+
+    private final Slot[] slots;
+    private final int mask;
+    private final OutputSink output;
+    private final Writer journal;
+    private final ObjectWriter journalWriter;
+    // The number of commands published by the submitting thread
+    private final AtomicLong published = new AtomicLong();
+    // The number of commands written to the journal
+    private final AtomicLong journaled = new AtomicLong();
+    // The number of commands executed by the business logic thread
+    private final AtomicLong executed = new AtomicLong();
+    // The number of commands whose output was written
+    private final AtomicLong written = new AtomicLong();
+    // The number of commands of the run, known once the strategy is closed
+    private volatile long end = OPEN;
+    private volatile IOException journalFailure;
+    private volatile RuntimeException serializerFailure;
+    private final Thread journalThread;
+    private final Thread logicThread;
+    private final Thread serializerThread;
+    private long claimed;
+
+    /**
+     * Creates the ring and starts its consumers.
+     * @param engine the engine the commands are executed against
+     * @param output where the results of the commands are written
+     * @param size the minimum number of slots, rounded up to a power of two
+     * @param journalFile the file the commands are journaled to, or null for no journal
+     * @throws UncheckedIOException if the journal file cannot be created
+     */
+    public RingBufferExecution(final BankEngine engine, final OutputSink output,
+                               final int size, final File journalFile) {
+        int capacity = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        this.slots = new Slot[capacity];
+        this.mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot(engine);
+        }
+        this.output = output;
+        this.journalWriter = engine.getObjectMapper().writer();
+        if (journalFile == null) {
+            this.journal = null;
+            this.journalThread = null;
+        } else {
+            try {
+                this.journal = new BufferedWriter(new FileWriter(journalFile));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            this.journalThread = Thread.ofPlatform().name("bank-ring-journal").daemon()
+                    .start(this::journal);
+        }
+        this.logicThread = Thread.ofPlatform().name("bank-ring-logic").daemon()
+                .start(this::execute);
+        this.serializerThread = Thread.ofPlatform().name("bank-ring-serializer").daemon()
+                .start(this::serialize);
+    }
+
+    @Override
+    public void submit(final CommandInput command) {
+        // Wait until the serializer has freed the slot of the previous lap
+        int attempt = 0;
+        while (claimed - written.get() >= slots.length) {
+            attempt = RingQueue.backOff(attempt);
+        }
+        slots[(int) claimed & mask].command = command;
+        claimed++;
+        published.lazySet(claimed);
+    }
+
+    @Override
+    public void close() throws IOException {
+        end = claimed;
+        try {
+            if (journalThread != null) {
+                journalThread.join();
+            }
+            logicThread.join();
+            serializerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the ring", e);
+        } finally {
+            if (journal != null) {
+                journal.close();
+            }
+        }
+
+        if (journalFailure != null) {
+            throw journalFailure;
+        }
+        if (serializerFailure instanceof UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (serializerFailure != null) {
+            throw serializerFailure;
+        }
+    }
+
+    /**
+     * Loop of the journal thread. After a failure the commands are still let through, so
+     * the run finishes and close reports the failure.
+     */
+    private void journal() {
+        long next = 0;
+        long available = waitFor(published, next);
+        while (available > next) {
+            for (; next < available; next++) {
+                if (journalFailure == null) {
+                    try {
+                        journal.write(journalWriter.writeValueAsString(
+                                slots[(int) next & mask].command));
+                        journal.write(System.lineSeparator());
+                    } catch (IOException e) {
+                        journalFailure = e;
+                    }
+                }
+            }
+            journaled.lazySet(next);
+            available = waitFor(published, next);
+        }
+        if (journalFailure == null) {
+            try {
+                journal.flush();
+            } catch (IOException e) {
+                journalFailure = e;
+            }
+        }
+    }
+
+    /**
+     * Loop of the business logic thread, the only one that touches the engine.
+     */
+    private void execute() {
+        AtomicLong barrier = journal == null ? published : journaled;
+        long next = 0;
+        long available = waitFor(barrier, next);
+        while (available > next) {
+            for (; next < available; next++) {
+                Slot slot = slots[(int) next & mask];
+                slot.executor.executeSafely(slot.command);
+            }
+            executed.lazySet(next);
+            available = waitFor(barrier, next);
+        }
+    }
+
+    /**
+     * Loop of the serializer thread. After a failure the slots are still freed, so the
+     * submitting thread never waits for a stage that stopped.
+     */
+    private void serialize() {
+        long next = 0;
+        long available = waitFor(executed, next);
+        while (available > next) {
+            for (; next < available; next++) {
+                Slot slot = slots[(int) next & mask];
+                if (serializerFailure == null) {
+                    try {
+                        for (JsonNode node : slot.output.getNodes()) {
+                            output.add(node);
+                        }
+                    } catch (RuntimeException e) {
+                        serializerFailure = e;
+                    }
+                }
+                slot.output.clear();
+                slot.command = null;
+            }
+            written.lazySet(next);
+            available = waitFor(executed, next);
+        }
+    }
+
+    /**
+     * Waits until the sequence before a consumer has moved past its next slot.
+     * @param barrier the sequence of the stage before the consumer
+     * @param next the next slot of the consumer
+     * @return the sequence of the stage before, or next if the run is over
+     */
+    private long waitFor(final AtomicLong barrier, final long next) {
+        int attempt = 0;
+        long available = barrier.get();
+        while (available == next) {
+            if (end == next) {
+                return next;
+            }
+            attempt = RingQueue.backOff(attempt);
+            available = barrier.get();
+        }
+        return available;
+    }
+
+    /**
+     * One place of the ring. The command is written by the submitting thread and read by
+     * the consumers after the barrier before them has passed it.
+     */
+    private static final class Slot {
+        private final BufferedOutputSink output = new BufferedOutputSink();
+        private final CommandExecutor executor;
+        private CommandInput command;
+
+        Slot(final BankEngine engine) {
+            this.executor = new CommandExecutor(engine, output);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package org.poo.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded queue between two stages of a CommandPipeline, with one producer and one consumer.
+ *
+ * The elements are kept in a ring of slots; the producer only moves the tail and the
+ * consumer only moves the head, so neither of them takes a lock. A producer that finds
+ * the ring full waits for the consumer (this is the backpressure of the pipeline), first
+ * spinning, then parking for short periods. The producer also records how full the queue
+ * was, for the statistics of the stages.
+ * @param <E> the type of the elements
+ */
+final class RingQueue<E> {
+    private static final int SPINS = 100;
+    private static final int YIELDS = 100;
+    private static final long PARK_NANOS = 50_000;
+
+    private final Object[] slots;
+    private final int mask;
+    // The next slot to be taken, moved only by the consumer
+    private final AtomicLong head = new AtomicLong();
+    // The next slot to be filled, moved only by the producer
+    private final AtomicLong tail = new AtomicLong();
+    private volatile boolean closed;
+
+    // Written by the producer
+    private long puts;
+    private long depthSum;
+    private int maxDepth;
+    private long fullWaits;
+    private long putWaitNanos;
+    // Written by the consumer
+    private long takeWaitNanos;
+
+    /**
+     * Creates a queue that holds at least the given number of elements.
+     * @param capacity the minimum capacity, rounded up to a power of two
+     */
+    RingQueue(final int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        slots = new Object[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Adds an element, waiting while the queue is full.
+     * @param element the element
+     * @return false if the queue was closed before the element could be added
+     */
+    boolean put(final E element) {
+        long position = tail.get();
+        if (position - head.get() == slots.length) {
+            fullWaits++;
+            long start = System.nanoTime();
+            int attempt = 0;
+            while (position - head.get() == slots.length) {
+                if (closed) {
+                    return false;
+                }
+                attempt = backOff(attempt);
+            }
+            putWaitNanos += System.nanoTime() - start;
+        }
+        slots[(int) position & mask] = element;
+        tail.lazySet(position + 1);
+
+        int depth = (int) (position + 1 - head.get());
+        puts++;
+        depthSum += depth;
+        maxDepth = Math.max(maxDepth, depth);
+        return true;
+    }
+
+    /**
+     * Removes the oldest element, waiting while the queue is empty.
+     * @return the element, or null if the queue was closed while empty
+     */
+    @SuppressWarnings("unchecked")
+    E take() {
+        long position = head.get();
+        if (position == tail.get()) {
+            long start = System.nanoTime();
+            int attempt = 0;
+            while (position == tail.get()) {
+                if (closed) {
+                    return null;
+                }
+                attempt = backOff(attempt);
+            }
+            takeWaitNanos += System.nanoTime() - start;
+        }
+        int index = (int) position & mask;
+        E element = (E) slots[index];
+        slots[index] = null;
+        head.lazySet(position + 1);
+        return element;
+    }
+
+    /**
+     * Wakes up and stops the producer and the consumer if they are waiting.
+     */
+    void close() {
+        closed = true;
+    }
+
+    /**
+     * Waits a little before a thread looks again at a sequence of another thread:
+     * spinning first, then yielding, then parking for short periods.
+     * @param attempt the number of times the thread already waited
+     * @return the next attempt
+     */
+    static int backOff(final int attempt) {
+        if (attempt < SPINS) {
+            Thread.onSpinWait();
+        } else if (attempt < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return attempt + 1;
+    }
+
+    /**
+     * Getter for the number of elements the queue can hold.
+     * @return the capacity
+     */
+    int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * The average number of elements in the queue, right after each put.
+     * @return the average depth
+     */
+    double getAverageDepth() {
+        return puts == 0 ? 0 : (double) depthSum / puts;
+    }
+
+    /**
+     * Getter for the largest number of elements the queue held.
+     * @return the maximum depth
+     */
+    int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Getter for the number of puts that found the queue full.
+     * @return the number of times the producer was slowed down
+     */
+    long getFullWaits() {
+        return fullWaits;
+    }
+
+    /**
+     * Getter for the time the producer spent waiting for free slots.
+     * @return the waiting time, in nanoseconds
+     */
+    long getPutWaitNanos() {
+        return putWaitNanos;
+    }
+
+    /**
+     * Getter for the time the consumer spent waiting for elements.
+     * @return the waiting time, in nanoseconds
+     */
+    long getTakeWaitNanos() {
+        return takeWaitNanos;
+    }
+}
@@ -0,0 +1,114 @@
+package org.poo.engine;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.poo.commands.CommandExecutor;
+import org.poo.fileio.BufferedOutputSink;
+import org.poo.fileio.CommandInput;
+import org.poo.fileio.OutputSink;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Replays a known list of commands with a precomputed schedule (-Dbank.executor=scheduled).
+ *
+ * The commands are only collected while they are submitted. When the input ends, they are
+ * replayed one segment at a time: the commands up to the next global command are analyzed
+ * on the engine itself (see FootprintAnalyzer), which is valid until that global command
+ * runs, and the levels of their DependencyGraph run one after the other, with the commands
+ * of each level in parallel. Then the global command runs alone and the next segment is
+ * analyzed. Every command runs exactly once; the results are written in the order of the
+ * input. The graph of the whole list is kept for its statistics (see getGraph).
+ */
+public final class ScheduledExecution implements ExecutionStrategy {
+    private final BankEngine engine;
+    private final OutputSink output;
+    private final int threads;
+    private final List<CommandInput> commands = new ArrayList<>();
+    private DependencyGraph graph;
+
+    public ScheduledExecution(final BankEngine engine, final OutputSink output,
+                              final int threads) {
+        this.engine = engine;
+        this.output = output;
+        this.threads = Math.max(1, threads);
+    }
+
+    @Override
+    public void submit(final CommandInput command) {
+        commands.add(command);
+    }
+
+    @Override
+    public void close() throws IOException {
+        FootprintAnalyzer analyzer = new FootprintAnalyzer(engine.getUsers(), true);
+        List<CommandFootprint> footprints = new ArrayList<>(commands.size());
+        int segmentStart = 0;
+        try (ExecutorService workers = Executors.newFixedThreadPool(threads)) {
+            for (int i = 0; i < commands.size(); i++) {
+                CommandFootprint footprint = analyzer.analyze(commands.get(i));
+                footprints.add(footprint);
+                if (footprint.isGlobal()) {
+                    replay(workers, segmentStart, footprints.subList(segmentStart, i));
+                    new CommandExecutor(engine, output).executeSafely(commands.get(i));
+                    analyzer.invalidate();
+                    segmentStart = i + 1;
+                }
+            }
+            replay(workers, segmentStart, footprints.subList(segmentStart, commands.size()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while running the schedule", e);
+        }
+        graph = DependencyGraph.of(footprints);
+    }
+
+    /**
+     * Runs the commands between two global commands, a level of their graph at a time.
+     * @param workers the threads the levels run on
+     * @param offset the index of the first command of the segment
+     * @param segment the footprints of the commands of the segment
+     */
+    private void replay(final ExecutorService workers, final int offset,
+                        final List<CommandFootprint> segment)
+            throws InterruptedException, IOException {
+        List<List<JsonNode>> results = new ArrayList<>(segment.size());
+        for (int i = 0; i < segment.size(); i++) {
+            results.add(null);
+        }
+        int nextToWrite = 0;
+        for (List<Integer> level : DependencyGraph.of(segment).getSchedule()) {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int index : level) {
+                tasks.add(() -> {
+                    BufferedOutputSink buffer = new BufferedOutputSink();
+                    new CommandExecutor(engine, buffer)
+                            .executeSafely(commands.get(offset + index));
+                    results.set(index, buffer.getNodes());
+                    return null;
+                });
+            }
+            workers.invokeAll(tasks);
+            // Write everything that is complete, in input order
+            while (nextToWrite < results.size() && results.get(nextToWrite) != null) {
+                for (JsonNode node : results.get(nextToWrite)) {
+                    output.add(node);
+                }
+                results.set(nextToWrite, List.of());
+                nextToWrite++;
+            }
+        }
+    }
+
+    /**
+     * Getter for the graph of the last replay.
+     * @return the dependency graph, or null before the replay
+     */
+    public DependencyGraph getGraph() {
+        return graph;
+    }
+}
@@ -0,0 +1,27 @@
+package org.poo.engine;
+
+import org.poo.commands.CommandExecutor;
+import org.poo.fileio.CommandInput;
+import org.poo.fileio.OutputSink;
+
+/**
+ * Executes every command on the calling thread, as soon as it is submitted.
+ * This is the default strategy and the reference for all the others.
+ */
+public final class SerialExecution implements ExecutionStrategy {
+    private final CommandExecutor executor;
+
+    public SerialExecution(final BankEngine engine, final OutputSink output) {
+        this.executor = new CommandExecutor(engine, output);
+    }
+
+    @Override
+    public void submit(final CommandInput command) {
+        executor.executeSafely(command);
+    }
+
+    @Override
+    public void close() {
+        // Every command has already finished when submit returns
+    }
+}
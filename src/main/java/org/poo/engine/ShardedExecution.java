@@ -0,0 +1,285 @@
+package org.poo.engine;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.poo.commands.Command;
+import org.poo.commands.CommandExecutor;
+import org.poo.fileio.BufferedOutputSink;
+import org.poo.fileio.CommandInput;
+import org.poo.fileio.OutputSink;
+import org.poo.models.User;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Executes the commands on several worker threads, one for each shard of users
+ * (-Dbank.executor=sharded).
+ *
+ * Before a command is queued, its footprint says which users it touches:
+ * - a command of a single shard goes to the queue of that shard, so the commands of
+ *   the same account always run in the order of the input;
+ * - a command of several shards is put in the queue of each of them; it runs only after
+ *   all of them reached it, on the last one to arrive, while the others wait;
+ * - a global command is a barrier for all the shards and for the submitting thread,
+ *   which also has to wait for it before looking at the next commands;
+ * - a command that touches no user runs directly on the submitting thread.
+ * Every queue receives the commands in the order they were submitted, so the barriers can
+ * not block each other. The commands can also be submitted from several threads (see
+ * submitForResult), each one waiting for its own output. The results also go through a
+ * reorder buffer, so the output is the same as in a serial run.
+ * The commands that only read the bank (reports, prints) are run on snapshots by a
+ * SnapshotReader: the shard only copies their users and goes on with its queue.
+ */
+public final class ShardedExecution implements ExecutionStrategy {
+    private static final int OUTPUT_WINDOW = 4096;
+    // The most commands of a batch that are grouped into one task
+    private static final int MAX_GROUP = 64;
+
+    private final BankEngine engine;
+    private final FootprintAnalyzer analyzer;
+    private final OrderedOutputCommitter committer;
+    private final SnapshotReader snapshots;
+    private final Map<User, Integer> shardOfUser = new IdentityHashMap<>();
+    private final List<BlockingQueue<Task>> queues = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final Task stop = new Task(0);
+    private final Lock dispatchLock = new ReentrantLock();
+    private long nextSequence;
+
+    public ShardedExecution(final BankEngine engine, final OutputSink output,
+                            final int shards) {
+        this.engine = engine;
+        this.analyzer = new FootprintAnalyzer(engine.getUsers());
+        this.committer = new OrderedOutputCommitter(output, OUTPUT_WINDOW);
+        this.snapshots = new SnapshotReader(engine, committer, shards);
+
+        int shardCount = Math.max(1, Math.min(shards, engine.getUsers().size()));
+        for (int i = 0; i < engine.getUsers().size(); i++) {
+            shardOfUser.put(engine.getUsers().get(i), i % shardCount);
+        }
+        for (int i = 0; i < shardCount; i++) {
+            BlockingQueue<Task> queue = new LinkedBlockingQueue<>();
+            Thread worker = new Thread(() -> work(queue), "bank-shard-" + i);
+            worker.setDaemon(true);
+            queues.add(queue);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    @Override
+    public void submit(final CommandInput command) throws IOException {
+        submitForResult(command);
+    }
+
+    /**
+     * Submits a command and returns its output once it has run. The commands can be
+     * submitted from several threads; their order is the order of this call.
+     * @param command the command to be executed
+     * @return the nodes the command added to the output
+     * @throws IOException if the thread was interrupted while submitting
+     */
+    public CompletableFuture<List<JsonNode>> submitForResult(final CommandInput command)
+            throws IOException {
+        return submitBatch(List.of(command)).thenApply(List::getFirst);
+    }
+
+    /**
+     * Submits a list of commands at once; they keep their order and no other command
+     * can come between them.
+     *
+     * The dispatch work is shared by the whole batch: the lock is taken once, the
+     * accounts and cards are resolved from the indexes of a single FootprintAnalyzer and
+     * the handler of each command is resolved before it is queued. The commands of the same
+     * shard are grouped into one task, executed with a single context, until a command of
+     * several shards needs that shard.
+     * @param commands the commands to be executed
+     * @return the output of each command, in the order of the list
+     * @throws IOException if the thread was interrupted while submitting
+     */
+    public CompletableFuture<List<List<JsonNode>>> submitBatch(final List<CommandInput> commands)
+            throws IOException {
+        List<CompletableFuture<List<JsonNode>>> results = new ArrayList<>(commands.size());
+        Map<Integer, Task> groups = new HashMap<>();
+        dispatchLock.lock();
+        try {
+            for (CommandInput command : commands) {
+                // A full window has to wait for the groups that were not queued yet
+                if (!committer.tryReserve()) {
+                    flushAll(groups);
+                    committer.reserve();
+                }
+                CommandFootprint footprint = analyzer.analyze(command);
+                Entry entry = new Entry(nextSequence++, command, footprint);
+                results.add(entry.result);
+
+                if (footprint.isGlobal()) {
+                    flushAll(groups);
+                    // All the shards and this thread take part in the barrier
+                    Task task = new Task(entry, queues.size() + 1);
+                    for (BlockingQueue<Task> queue : queues) {
+                        queue.put(task);
+                    }
+                    task.arrive();
+                    analyzer.invalidate();
+                    continue;
+                }
+
+                TreeSet<Integer> shards = new TreeSet<>();
+                for (User user : footprint.getUsers()) {
+                    shards.add(shardOfUser.get(user));
+                }
+                if (shards.isEmpty()) {
+                    new Task(entry, 1).arrive();
+                } else if (shards.size() == 1) {
+                    int shard = shards.first();
+                    Task group = groups.computeIfAbsent(shard, key -> new Task(1));
+                    group.entries.add(entry);
+                    if (group.entries.size() == MAX_GROUP) {
+                        flush(groups, shard);
+                    }
+                } else {
+                    Task task = new Task(entry, shards.size());
+                    for (int shard : shards) {
+                        flush(groups, shard);
+                        queues.get(shard).put(task);
+                    }
+                }
+            }
+            flushAll(groups);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while submitting the commands", e);
+        } finally {
+            dispatchLock.unlock();
+        }
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> results.stream().map(CompletableFuture::join).toList());
+    }
+
+    private void flush(final Map<Integer, Task> groups, final int shard)
+            throws InterruptedException {
+        Task group = groups.remove(shard);
+        if (group != null) {
+            queues.get(shard).put(group);
+        }
+    }
+
+    private void flushAll(final Map<Integer, Task> groups) throws InterruptedException {
+        for (int shard : new ArrayList<>(groups.keySet())) {
+            flush(groups, shard);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            for (BlockingQueue<Task> queue : queues) {
+                queue.put(stop);
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the shards", e);
+        } finally {
+            snapshots.close();
+        }
+        committer.checkFailure();
+    }
+
+    /**
+     * Loop of a shard worker: runs its queue in order until the stop marker.
+     */
+    private void work(final BlockingQueue<Task> queue) {
+        try {
+            Task task = queue.take();
+            while (task != stop) {
+                task.arrive();
+                task = queue.take();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A submitted command, with its resolved handler, its footprint and the future of
+     * its output.
+     */
+    private static final class Entry {
+        private final long sequence;
+        private final CommandInput command;
+        private final Command handler;
+        private final CommandFootprint footprint;
+        private final CompletableFuture<List<JsonNode>> result = new CompletableFuture<>();
+
+        Entry(final long sequence, final CommandInput command,
+              final CommandFootprint footprint) {
+            this.sequence = sequence;
+            this.command = command;
+            this.handler = CommandExecutor.resolve(command);
+            this.footprint = footprint;
+        }
+    }
+
+    /**
+     * One or more commands, run in order, together with the barrier of the threads
+     * that must reach them.
+     */
+    private final class Task {
+        private final List<Entry> entries = new ArrayList<>();
+        private final AtomicInteger missing;
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        Task(final int participants) {
+            this.missing = new AtomicInteger(participants);
+        }
+
+        Task(final Entry entry, final int participants) {
+            this(participants);
+            entries.add(entry);
+        }
+
+        /**
+         * Called by every participant when the task is next in its queue. The last one
+         * to arrive runs the commands; the others wait until it is done.
+         */
+        void arrive() throws InterruptedException {
+            if (missing.decrementAndGet() > 0) {
+                done.await();
+                return;
+            }
+            BufferedOutputSink buffer = new BufferedOutputSink();
+            CommandExecutor executor = new CommandExecutor(engine, buffer);
+            try {
+                for (Entry entry : entries) {
+                    if (SnapshotReader.isReadOnly(entry.command)) {
+                        snapshots.read(entry.sequence, entry.handler, entry.command,
+                                entry.footprint).thenAccept(entry.result::complete);
+                        continue;
+                    }
+                    executor.executeSafely(entry.handler, entry.command);
+                    List<JsonNode> nodes = buffer.drain();
+                    committer.complete(entry.sequence, nodes);
+                    entry.result.complete(nodes);
+                }
+            } finally {
+                done.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.poo.engine;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.poo.commands.Command;
+import org.poo.commands.CommandContext;
+import org.poo.commands.CommandExecutor;
+import org.poo.commands.CommandType;
+import org.poo.fileio.BufferedOutputSink;
+import org.poo.fileio.CommandInput;
+import org.poo.models.Account;
+import org.poo.models.User;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the commands that only read the bank on snapshots, on threads of their own, so the
+ * thread that reached them can go on with the next commands.
+ *
+ * A snapshot is a version of the users of a command, tagged with the sequence number of the
+ * command: it is taken by the thread that owns these users at that position of the stream
+ * (the same place where the command would run), as read-only versions of the users (see
+ * User.snapshot). A version shares the transactions and the payment totals of its user at
+ * their current length, so taking it does not depend on the size of the history; only the
+ * accounts and cards are copied. The writers keep changing the real users; the readers see
+ * the state at their own position, however late they run. Several versions of the same
+ * user can be read at the same time. The users outside the snapshot are only searched by
+ * email or IBAN, which never change, in lists of accounts and cards that are copied on
+ * write, so they are shared even while a later global command adds or removes accounts.
+ *
+ * The output of each read goes to the reorder buffer of the strategy, at its sequence.
+ */
+final class SnapshotReader implements AutoCloseable {
+    // Commands that only read their users
+    private static final Set<CommandType> READ_ONLY = EnumSet.of(CommandType.PRINT_USERS,
+            CommandType.PRINT_TRANSACTIONS, CommandType.REPORT, CommandType.SPENDINGS_REPORT,
+            CommandType.BUSINESS_REPORT);
+
+    private final BankEngine engine;
+    private final OrderedOutputCommitter committer;
+    private final ExecutorService readers;
+
+    SnapshotReader(final BankEngine engine, final OrderedOutputCommitter committer,
+                   final int threads) {
+        this.engine = engine;
+        this.committer = committer;
+        this.readers = Executors.newFixedThreadPool(threads,
+                Thread.ofPlatform().name("bank-snapshot-reader-", 0).daemon().factory());
+    }
+
+    /**
+     * Checks if a command can run on a snapshot.
+     * @param command the command from the input
+     * @return true if the command does not change the bank
+     */
+    static boolean isReadOnly(final CommandInput command) {
+        return READ_ONLY.contains(CommandType.fromCommandName(command.getCommand()));
+    }
+
+    /**
+     * Takes the snapshot of a read only command and runs the command on it, later.
+     * Must be called by the thread that owns the users of the footprint, at the position
+     * of the command.
+     * @param sequence the sequence number of the command
+     * @param handler the command, as returned by CommandExecutor.resolve
+     * @param command the input of the command
+     * @param footprint the users read by the command
+     * @return the output of the command, once it has run
+     */
+    CompletableFuture<List<JsonNode>> read(final long sequence, final Command handler,
+                                           final CommandInput command,
+                                           final CommandFootprint footprint) {
+        List<User> snapshot = snapshot(footprint);
+        return CompletableFuture.supplyAsync(() -> {
+            BufferedOutputSink buffer = new BufferedOutputSink();
+            CommandContext context = new CommandContext(engine, snapshot, buffer);
+            new CommandExecutor(context).executeSafely(handler, command);
+            committer.complete(sequence, buffer.getNodes());
+            return buffer.getNodes();
+        }, readers);
+    }
+
+    /**
+     * Takes the versions of the users of a footprint (all of them for a global one).
+     * @param footprint the users read by the command
+     * @return the users of the bank, with the versions in place of the originals
+     */
+    private List<User> snapshot(final CommandFootprint footprint) {
+        Set<User> read = Collections.newSetFromMap(new IdentityHashMap<>());
+        read.addAll(footprint.getUsers());
+        List<User> users = new ArrayList<>(engine.getUsers());
+        List<User> copies = new ArrayList<>();
+        for (int i = 0; i < users.size(); i++) {
+            if (footprint.isGlobal() || read.contains(users.get(i))) {
+                User copy = users.get(i).snapshot();
+                users.set(i, copy);
+                copies.add(copy);
+            }
+        }
+
+        // An associate must see the copy of the business account, if there is one
+        Map<String, Account> copiedAccounts = new HashMap<>();
+        for (User copy : copies) {
+            for (Account account : copy.getAccounts()) {
+                copiedAccounts.putIfAbsent(account.getIban(), account);
+            }
+        }
+        for (User copy : copies) {
+            Account ownerAccount = copy.getOwnerAccount();
+            if (ownerAccount != null && copiedAccounts.containsKey(ownerAccount.getIban())) {
+                copy.setOwnerAccount(copiedAccounts.get(ownerAccount.getIban()));
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Waits for the reads that were started and stops the reader threads.
+     */
+    @Override
+    public void close() {
+        readers.close();
+    }
+}
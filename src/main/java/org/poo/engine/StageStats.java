@@ -0,0 +1,101 @@
+package org.poo.engine;
+
+/**
+ * The statistics of one stage of a CommandPipeline, taken when the pipeline is closed.
+ * The queue is the one the stage reads from; a stage without one has a capacity of 0.
+ */
+public final class StageStats {
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double PERCENT = 100;
+
+    private final String name;
+    private final long items;
+    private final long elapsedNanos;
+    private final long waitNanos;
+    private final int queueCapacity;
+    private final double averageQueueDepth;
+    private final int maxQueueDepth;
+    private final long backpressureWaits;
+
+    StageStats(final String name, final long items, final long elapsedNanos,
+               final long waitNanos, final RingQueue<?> queue) {
+        this.name = name;
+        this.items = items;
+        this.elapsedNanos = elapsedNanos;
+        this.waitNanos = waitNanos;
+        this.queueCapacity = queue == null ? 0 : queue.getCapacity();
+        this.averageQueueDepth = queue == null ? 0 : queue.getAverageDepth();
+        this.maxQueueDepth = queue == null ? 0 : queue.getMaxDepth();
+        this.backpressureWaits = queue == null ? 0 : queue.getFullWaits();
+    }
+
+    /**
+     * Getter for the name of the stage.
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Getter for the number of elements the stage handled.
+     * @return the number of commands or nodes
+     */
+    public long getItems() {
+        return items;
+    }
+
+    /**
+     * The number of elements handled per second of the life of the stage.
+     * @return the throughput
+     */
+    public double getThroughput() {
+        return elapsedNanos == 0 ? 0 : items * NANOS_PER_SECOND / elapsedNanos;
+    }
+
+    /**
+     * The part of the life of the stage it was not waiting for the other stages.
+     * @return the percentage of busy time
+     */
+    public double getBusyPercent() {
+        if (elapsedNanos == 0) {
+            return 0;
+        }
+        return PERCENT * Math.max(0, elapsedNanos - waitNanos) / elapsedNanos;
+    }
+
+    /**
+     * Getter for the average depth of the queue the stage reads from.
+     * @return the average number of waiting elements
+     */
+    public double getAverageQueueDepth() {
+        return averageQueueDepth;
+    }
+
+    /**
+     * Getter for the largest depth of the queue the stage reads from.
+     * @return the maximum number of waiting elements
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * Getter for the number of times the stage before this one found the queue full.
+     * @return the number of backpressure waits
+     */
+    public long getBackpressureWaits() {
+        return backpressureWaits;
+    }
+
+    @Override
+    public String toString() {
+        String stats = String.format("%s{items=%d, throughput=%.0f/s, busy=%.1f%%", name,
+                items, getThroughput(), getBusyPercent());
+        if (queueCapacity > 0) {
+            stats += String.format(", queue=%.1f avg/%d max/%d, backpressure=%d",
+                    averageQueueDepth, maxQueueDepth, queueCapacity, backpressureWaits);
+        }
+        return stats + "}";
+    }
+}
@@ -0,0 +1,52 @@
+package org.poo.fileio;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Output sink that keeps the nodes of a single command in memory.
+ * It is used when commands run out of order, so that their results can be
+ * written to the real output later, in the order of the input.
+ */
+public final class BufferedOutputSink implements OutputSink {
+    private final List<JsonNode> nodes = new ArrayList<>();
+
+    @Override
+    public void add(final JsonNode node) {
+        nodes.add(node);
+    }
+
+    /**
+     * Getter for the nodes added so far.
+     * @return the nodes, in the order they were added
+     */
+    public List<JsonNode> getNodes() {
+        return Collections.unmodifiableList(nodes);
+    }
+
+    /**
+     * Removes and returns the nodes added since the last call, so that one buffer can
+     * collect the output of several commands, one after the other.
+     * @return the nodes, in the order they were added
+     */
+    public List<JsonNode> drain() {
+        List<JsonNode> drained = List.copyOf(nodes);
+        nodes.clear();
+        return drained;
+    }
+
+    /**
+     * Removes the nodes added so far, so the buffer can be used again.
+     */
+    public void clear() {
+        nodes.clear();
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release, the nodes are read by the owner of the buffer
+    }
+}
@@ -24,9 +24,11 @@ public final class CommandInput {
     private String splitPaymentType;
     private String type;
     private String location;
+    private String cursor;
     private int timestamp;
     private int startTimestamp;
     private int endTimestamp;
+    private int limit;
     private double interestRate;
     private double spendingLimit;
     private double depositLimit;
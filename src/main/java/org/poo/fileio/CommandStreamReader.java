@@ -0,0 +1,171 @@
+package org.poo.fileio;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Streaming reader for an input file.
+ * The users, the exchange rates and the commerciants are read eagerly when the reader is
+ * created, while the commands are pulled one at a time from the JsonParser. This way only
+ * the current command is kept in memory, no matter how long the commands array is.
+ * The "commands" field must be the last field of the input object.
+ */
+public final class CommandStreamReader implements Iterator<CommandInput>, Closeable {
+    private final ObjectMapper objectMapper;
+    private final JsonParser parser;
+    private UserInput[] users = new UserInput[0];
+    private ExchangeInput[] exchangeRates;
+    private CommerciantInput[] commerciants;
+    // The token of the next command, or null if the commands array has ended
+    private JsonToken nextToken;
+
+    public CommandStreamReader(final ObjectMapper objectMapper,
+                               final File file) throws IOException {
+        this(objectMapper, objectMapper.getFactory().createParser(file));
+    }
+
+    public CommandStreamReader(final ObjectMapper objectMapper,
+                               final JsonParser parser) throws IOException {
+        this.objectMapper = objectMapper;
+        this.parser = parser;
+        readHeader();
+    }
+
+    /**
+     * Read the fields placed before the commands array and stop on its first command.
+     * @throws IOException if the input is not valid
+     */
+    private void readHeader() throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("The input must be a JSON object");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "users" -> users = objectMapper.readValue(parser, UserInput[].class);
+                case "exchangeRates" -> exchangeRates = objectMapper.readValue(parser,
+                        ExchangeInput[].class);
+                case "commerciants" -> commerciants = objectMapper.readValue(parser,
+                        CommerciantInput[].class);
+                case "commands" -> {
+                    if (parser.currentToken() != JsonToken.START_ARRAY) {
+                        throw new IOException("The commands must be an array");
+                    }
+                    advance();
+                    return;
+                }
+                default -> parser.skipChildren();
+            }
+        }
+        // There are no commands in the input
+        nextToken = null;
+    }
+
+    /**
+     * Move to the next command of the array.
+     * @throws IOException if the input is not valid
+     */
+    private void advance() throws IOException {
+        nextToken = parser.nextToken();
+        if (nextToken == JsonToken.END_ARRAY) {
+            nextToken = null;
+            readTrailer();
+        } else if (nextToken != JsonToken.START_OBJECT) {
+            throw new IOException("Every command must be a JSON object");
+        }
+    }
+
+    /**
+     * Check the fields after the commands array. The commands have already been executed,
+     * so the sections needed by them cannot come after the array.
+     * @throws IOException if a section is placed after the commands
+     */
+    private void readTrailer() throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            if (field.equals("users") || field.equals("exchangeRates")
+                    || field.equals("commerciants")) {
+                throw new IOException("The field " + field + " must come before the commands");
+            }
+            parser.nextToken();
+            parser.skipChildren();
+        }
+    }
+
+    /**
+     * Getter for the users of the input.
+     * @return the users
+     */
+    public UserInput[] getUsers() {
+        return users;
+    }
+
+    /**
+     * Getter for the exchange rates of the input.
+     * @return the exchange rates, or null if they are missing
+     */
+    public ExchangeInput[] getExchangeRates() {
+        return exchangeRates;
+    }
+
+    /**
+     * Getter for the commerciants of the input.
+     * @return the commerciants, or null if they are missing
+     */
+    public CommerciantInput[] getCommerciants() {
+        return commerciants;
+    }
+
+    /**
+     * Getter for the position of the next command in the input.
+     * @return the offset, in bytes, where the next command starts
+     */
+    public long getCommandOffset() {
+        return parser.currentTokenLocation().getByteOffset();
+    }
+
+    /**
+     * Check if there are commands left.
+     * @return true if there is another command in the array
+     */
+    @Override
+    public boolean hasNext() {
+        return nextToken != null;
+    }
+
+    /**
+     * Read the next command from the parser.
+     * @return the next command
+     */
+    @Override
+    public CommandInput next() {
+        if (nextToken == null) {
+            throw new NoSuchElementException();
+        }
+        try {
+            CommandInput command = objectMapper.readValue(parser, CommandInput.class);
+            advance();
+            return command;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Close the underlying parser.
+     * @throws IOException if the parser cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+}
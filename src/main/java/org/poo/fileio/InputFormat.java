@@ -0,0 +1,69 @@
+package org.poo.fileio;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.io.File;
+
+/**
+ * The encodings an input file can use, chosen by the extension of the file.
+ * The binary formats hold exactly the same document as the JSON file (see InputConverter),
+ * but they are read without parsing text.
+ */
+public enum InputFormat {
+    JSON(".json"),
+    SMILE(".smile"),
+    CBOR(".cbor");
+
+    private final String extension;
+
+    InputFormat(final String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Getter for the extension of the files in this format.
+     * @return the extension, with the dot
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Creates a mapper that reads and writes this format.
+     * @return a new object mapper
+     */
+    public ObjectMapper createMapper() {
+        return switch (this) {
+            case SMILE -> new ObjectMapper(new SmileFactory());
+            case CBOR -> new ObjectMapper(new CBORFactory());
+            default -> new ObjectMapper();
+        };
+    }
+
+    /**
+     * Returns the format of a file, based on its extension. Unknown extensions are
+     * read as JSON.
+     * @param file the input file
+     * @return the format of the file
+     */
+    public static InputFormat fromFile(final File file) {
+        String name = file.getName().toLowerCase();
+        for (InputFormat format : values()) {
+            if (name.endsWith(format.extension)) {
+                return format;
+            }
+        }
+        return JSON;
+    }
+
+    /**
+     * Returns the format with the given name ("json", "smile" or "cbor").
+     * @param name the name of the format
+     * @return the format
+     */
+    public static InputFormat fromName(final String name) {
+        return valueOf(name.toUpperCase());
+    }
+}
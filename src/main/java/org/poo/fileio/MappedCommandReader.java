@@ -0,0 +1,375 @@
+package org.poo.fileio;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Reader for JSON input files too big to be read as a stream of bytes on a single thread
+ * (-Dbank.input=mapped).
+ *
+ * The file is mapped in memory, in windows of at most 1 GB, so its size is not limited by
+ * the heap. The header (the users, the exchange rates and the commerciants) is read like in
+ * CommandStreamReader. Then a splitter thread scans the bytes of the commands array and cuts
+ * it into chunks of whole commands, at the end of the top-level objects; it only has to
+ * follow the braces and the strings, not to parse the JSON. The chunks are parsed on worker
+ * threads, while the commands are returned strictly in the order of the file: the futures
+ * of the chunks are kept in a bounded queue, in the order they were cut, so the splitter
+ * waits when the caller falls behind. The "commands" field must be the last one that is
+ * needed, like for the streaming reader.
+ */
+public final class MappedCommandReader implements Iterator<CommandInput>, Closeable {
+    private static final long WINDOW_SIZE = 1L << 30;
+    private static final int CHUNK_SIZE = 1 << 20;
+    // The parsed chunks waiting for the caller, for each parser thread
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int BYTE_MASK = 0xFF;
+    private static final byte[] EMPTY_COMMANDS = "{\"commands\":[]"
+            .getBytes(StandardCharsets.UTF_8);
+    // Marks the end of the commands in the queue of the chunks
+    private static final Future<List<CommandInput>> END = CompletableFuture.completedFuture(
+            List.of());
+
+    private final ObjectMapper objectMapper;
+    private final FileChannel channel;
+    private final long size;
+    private final List<MappedByteBuffer> windows = new ArrayList<>();
+    private final UserInput[] users;
+    private final ExchangeInput[] exchangeRates;
+    private final CommerciantInput[] commerciants;
+    private final ExecutorService parsers;
+    private final BlockingQueue<Future<List<CommandInput>>> chunks;
+    private final Thread splitter;
+    private Iterator<CommandInput> current = List.<CommandInput>of().iterator();
+    private boolean finished;
+
+    public MappedCommandReader(final ObjectMapper objectMapper, final File file,
+                               final int threads) throws IOException {
+        this.objectMapper = objectMapper;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            this.size = channel.size();
+            for (long start = 0; start < size; start += WINDOW_SIZE) {
+                windows.add(channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(WINDOW_SIZE, size - start)));
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        long commandsStart;
+        try (CommandStreamReader header = new CommandStreamReader(objectMapper,
+                objectMapper.getFactory().createParser(new MappedInputStream(0)))) {
+            users = header.getUsers();
+            exchangeRates = header.getExchangeRates();
+            commerciants = header.getCommerciants();
+            // The header reader stops on the first command, or reads the whole input
+            commandsStart = header.hasNext() ? header.getCommandOffset() : -1;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        int parserCount = Math.max(1, threads);
+        this.chunks = new ArrayBlockingQueue<>(parserCount * CHUNKS_PER_THREAD);
+        this.parsers = Executors.newFixedThreadPool(parserCount,
+                Thread.ofPlatform().name("bank-input-parser-", 0).daemon().factory());
+        this.splitter = Thread.ofPlatform().name("bank-input-splitter").daemon()
+                .unstarted(() -> split(commandsStart));
+        if (commandsStart < 0) {
+            finished = true;
+        } else {
+            splitter.start();
+        }
+    }
+
+    /**
+     * Getter for the users of the input.
+     * @return the users
+     */
+    public UserInput[] getUsers() {
+        return users;
+    }
+
+    /**
+     * Getter for the exchange rates of the input.
+     * @return the exchange rates, or null if they are missing
+     */
+    public ExchangeInput[] getExchangeRates() {
+        return exchangeRates;
+    }
+
+    /**
+     * Getter for the commerciants of the input.
+     * @return the commerciants, or null if they are missing
+     */
+    public CommerciantInput[] getCommerciants() {
+        return commerciants;
+    }
+
+    /**
+     * Check if there are commands left. Waits for the next chunk to be parsed, if needed.
+     * @return true if there is another command in the array
+     */
+    @Override
+    public boolean hasNext() {
+        while (!current.hasNext() && !finished) {
+            takeChunk();
+        }
+        return current.hasNext();
+    }
+
+    /**
+     * Returns the next command, in the order of the file.
+     * @return the next command
+     */
+    @Override
+    public CommandInput next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return current.next();
+    }
+
+    /**
+     * Waits for the oldest chunk and makes it the current one.
+     */
+    private void takeChunk() {
+        try {
+            Future<List<CommandInput>> chunk = chunks.take();
+            if (chunk == END) {
+                finished = true;
+                return;
+            }
+            current = chunk.get().iterator();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new IOException(
+                    "Interrupted while reading the commands", e));
+        } catch (ExecutionException e) {
+            finished = true;
+            if (e.getCause() instanceof IOException ioException) {
+                throw new UncheckedIOException(ioException);
+            }
+            throw new UncheckedIOException(new IOException(e.getCause()));
+        }
+    }
+
+    /**
+     * Loop of the splitter thread: cuts the commands array into chunks and queues them,
+     * in order, followed by the end marker. A problem with the input is queued as a failed
+     * chunk, so the caller gets it after the commands before it.
+     * @param start the offset of the first command
+     */
+    private void split(final long start) {
+        try {
+            try {
+                long end = splitCommands(start);
+                checkTrailer(end);
+                chunks.put(END);
+            } catch (IOException e) {
+                chunks.put(CompletableFuture.failedFuture(e));
+            }
+        } catch (InterruptedException | RejectedExecutionException e) {
+            // The reader was closed
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Scans the commands array from its first command. Only the braces and the brackets
+     * outside the strings change the depth; the bytes of a multi-byte UTF-8 character can
+     * never be mistaken for them.
+     * @param start the offset of the first command
+     * @return the offset of the bracket that closes the array
+     * @throws IOException if the array is not a list of objects or is not closed
+     * @throws InterruptedException if the reader was closed
+     */
+    private long splitCommands(final long start) throws IOException, InterruptedException {
+        int depth = 0;
+        boolean inString = false;
+        boolean escaped = false;
+        // The first object of the chunk that is being built, or -1 for an empty chunk
+        long chunkStart = -1;
+        long objectEnd = -1;
+
+        for (long position = start; position < size; position++) {
+            byte value = byteAt(position);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (value == '\\') {
+                    escaped = true;
+                } else if (value == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+            if (depth > 0) {
+                switch (value) {
+                    case '"' -> inString = true;
+                    case '{', '[' -> depth++;
+                    case '}', ']' -> depth--;
+                    default -> { }
+                }
+                if (depth == 0) {
+                    objectEnd = position + 1;
+                    if (objectEnd - chunkStart >= CHUNK_SIZE) {
+                        submitChunk(chunkStart, objectEnd);
+                        chunkStart = -1;
+                    }
+                }
+                continue;
+            }
+            switch (value) {
+                case '{' -> {
+                    depth = 1;
+                    if (chunkStart < 0) {
+                        chunkStart = position;
+                    }
+                }
+                case ']' -> {
+                    if (chunkStart >= 0) {
+                        submitChunk(chunkStart, objectEnd);
+                    }
+                    return position;
+                }
+                case ',', ' ', '\t', '\n', '\r' -> { }
+                default -> {
+                    // The commands before the invalid one still run
+                    if (chunkStart >= 0) {
+                        submitChunk(chunkStart, objectEnd);
+                    }
+                    throw new IOException("Every command must be a JSON object");
+                }
+            }
+        }
+        throw new IOException("The commands array is not closed");
+    }
+
+    /**
+     * Queues the parsing of the commands between two offsets. The bytes are copied by the
+     * parser thread, wrapped in brackets and read as an array.
+     */
+    private void submitChunk(final long from, final long to)
+            throws IOException, InterruptedException {
+        if (to - from > Integer.MAX_VALUE - 2) {
+            throw new IOException("A command is too big to be read");
+        }
+        chunks.put(parsers.submit(() -> {
+            byte[] bytes = new byte[(int) (to - from) + 2];
+            bytes[0] = '[';
+            copy(from, bytes, 1, (int) (to - from));
+            bytes[bytes.length - 1] = ']';
+            return Arrays.asList(objectMapper.readValue(bytes, CommandInput[].class));
+        }));
+    }
+
+    /**
+     * Checks the fields after the commands array, like the streaming reader does. They are
+     * read as the rest of an object whose commands array is empty.
+     * @param arrayEnd the offset of the bracket that closes the array
+     */
+    private void checkTrailer(final long arrayEnd) throws IOException {
+        InputStream rest = new SequenceInputStream(new ByteArrayInputStream(EMPTY_COMMANDS),
+                new MappedInputStream(arrayEnd + 1));
+        try (CommandStreamReader trailer = new CommandStreamReader(objectMapper,
+                objectMapper.getFactory().createParser(rest))) {
+            if (trailer.hasNext()) {
+                throw new IOException("The commands array is not valid");
+            }
+        }
+    }
+
+    private byte byteAt(final long position) {
+        return windows.get((int) (position / WINDOW_SIZE)).get((int) (position % WINDOW_SIZE));
+    }
+
+    /**
+     * Copies bytes of the file, across the windows if needed. The absolute reads do not
+     * change the buffers, so several threads can copy at the same time.
+     */
+    private void copy(final long from, final byte[] destination, final int offset,
+                      final int length) {
+        long position = from;
+        int copied = 0;
+        while (copied < length) {
+            MappedByteBuffer window = windows.get((int) (position / WINDOW_SIZE));
+            int index = (int) (position % WINDOW_SIZE);
+            int count = Math.min(length - copied, window.limit() - index);
+            window.get(index, destination, offset + copied, count);
+            copied += count;
+            position += count;
+        }
+    }
+
+    /**
+     * Stops the splitter and the parsers and closes the file.
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        splitter.interrupt();
+        parsers.shutdownNow();
+        channel.close();
+    }
+
+    /**
+     * Reads the mapped file from an offset, for the Jackson parsers of the header and of
+     * the trailer.
+     */
+    private final class MappedInputStream extends InputStream {
+        private long position;
+
+        MappedInputStream(final long position) {
+            this.position = position;
+        }
+
+        @Override
+        public int read() {
+            if (position >= size) {
+                return -1;
+            }
+            return byteAt(position++) & BYTE_MASK;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (position >= size) {
+                return -1;
+            }
+            int count = (int) Math.min(length, size - position);
+            copy(position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+    }
+}
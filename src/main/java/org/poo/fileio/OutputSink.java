@@ -0,0 +1,26 @@
+package org.poo.fileio;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination for the result nodes produced by the commands.
+ * The commands only add finished nodes, so an implementation is free to keep them
+ * in memory or to write each one as soon as it arrives.
+ */
+public interface OutputSink extends Closeable {
+    /**
+     * Adds the result of a command to the output.
+     * @param node the finished JSON node of the command
+     */
+    void add(JsonNode node);
+
+    /**
+     * Finishes the output. No node can be added after this call.
+     * @throws IOException if the output cannot be written
+     */
+    @Override
+    void close() throws IOException;
+}
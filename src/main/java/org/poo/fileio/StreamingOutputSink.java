@@ -0,0 +1,52 @@
+package org.poo.fileio;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Output sink that writes every node to the output file through a JsonGenerator
+ * as soon as it is added, instead of keeping the whole output array on the heap.
+ * The file has the same layout as the one written by writerWithDefaultPrettyPrinter.
+ */
+public final class StreamingOutputSink implements OutputSink {
+    private final ObjectMapper objectMapper;
+    private final JsonGenerator generator;
+
+    public StreamingOutputSink(final ObjectMapper objectMapper,
+                               final File file) throws IOException {
+        this.objectMapper = objectMapper;
+        generator = objectMapper.getFactory().createGenerator(file, JsonEncoding.UTF8);
+        generator.useDefaultPrettyPrinter();
+        // Open the array that holds the results of all the commands
+        generator.writeStartArray();
+    }
+
+    /**
+     * Writes the node right away, only the generator buffer is kept in memory.
+     * @param node the finished JSON node of the command
+     */
+    @Override
+    public void add(final JsonNode node) {
+        try {
+            objectMapper.writeTree(generator, node);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Closes the array and flushes the file.
+     * @throws IOException if the output cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        generator.writeEndArray();
+        generator.close();
+    }
+}
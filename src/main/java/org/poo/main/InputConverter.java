@@ -0,0 +1,91 @@
+package org.poo.main;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.poo.fileio.InputFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Converts JSON input files to a binary format (Smile or CBOR), which Main reads
+ * based on the extension of the file.
+ * Every converted file is read back and compared with the JSON document, so the
+ * binary input always gives the same output as the JSON one.
+ *
+ * Usage: InputConverter smile|cbor output-directory input-file-or-directory...
+ */
+public final class InputConverter {
+
+    /**
+     * for coding style
+     */
+    private InputConverter() {
+    }
+
+    /**
+     * @param args the format, the output directory, then the JSON files or directories
+     * @throws IOException if a file cannot be read or written, or a converted
+     *                     file does not match its source
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 2 + 1) {
+            System.err.println("Usage: InputConverter smile|cbor <output directory> "
+                    + "<input file or directory>...");
+            return;
+        }
+        InputFormat format = InputFormat.fromName(args[0]);
+        File outputDirectory = new File(args[1]);
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + outputDirectory);
+        }
+
+        List<File> inputs = new ArrayList<>();
+        for (String path : Arrays.copyOfRange(args, 2, args.length)) {
+            File input = new File(path);
+            if (input.isDirectory()) {
+                File[] files = Objects.requireNonNull(input.listFiles());
+                Arrays.sort(files);
+                inputs.addAll(Arrays.asList(files));
+            } else {
+                inputs.add(input);
+            }
+        }
+
+        ObjectMapper jsonMapper = new ObjectMapper();
+        ObjectMapper binaryMapper = format.createMapper();
+        for (File input : inputs) {
+            if (InputFormat.fromFile(input) != InputFormat.JSON) {
+                continue;
+            }
+            String name = input.getName().replaceFirst("\\.json$", format.getExtension());
+            File output = new File(outputDirectory, name);
+            convert(input, output, jsonMapper, binaryMapper);
+            System.out.println(input + " -> " + output + " (" + input.length() + " -> "
+                    + output.length() + " bytes)");
+        }
+    }
+
+    /**
+     * Converts one file and checks that the result holds the same document.
+     * The order of the fields is kept, so the binary file can also be streamed.
+     * @param input the JSON file
+     * @param output the binary file
+     * @param jsonMapper the mapper for the JSON file
+     * @param binaryMapper the mapper for the binary format
+     * @throws IOException if the file cannot be converted
+     */
+    public static void convert(final File input, final File output,
+                               final ObjectMapper jsonMapper,
+                               final ObjectMapper binaryMapper) throws IOException {
+        JsonNode document = jsonMapper.readTree(input);
+        binaryMapper.writeValue(output, document);
+        if (!document.equals(binaryMapper.readTree(output))) {
+            throw new IOException("The converted file " + output + " differs from " + input);
+        }
+    }
+}
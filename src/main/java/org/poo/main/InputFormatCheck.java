@@ -0,0 +1,93 @@
+package org.poo.main;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.poo.checker.CheckerConstants;
+import org.poo.fileio.InputFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Checks that the binary inputs give the same output as the JSON ones.
+ * Every JSON file of the tests directory is converted to each binary format (see
+ * InputConverter), then both files are run through Main.action and the two result
+ * files are compared byte by byte.
+ *
+ * Usage: InputFormatCheck [smile|cbor]...   (both formats if none is given)
+ * Run it from the root of the project, like Main, without -Dbank.batch=parallel.
+ */
+public final class InputFormatCheck {
+
+    /**
+     * for coding style
+     */
+    private InputFormatCheck() {
+    }
+
+    /**
+     * @param args the binary formats to check
+     * @throws IOException if a file cannot be converted or run, or an output differs
+     */
+    public static void main(final String[] args) throws IOException {
+        List<InputFormat> formats = args.length == 0
+                ? List.of(InputFormat.SMILE, InputFormat.CBOR)
+                : Arrays.stream(args).map(InputFormat::fromName).toList();
+        File directory = new File(CheckerConstants.TESTS_PATH);
+        List<File> inputs = Arrays.stream(Objects.requireNonNull(directory.listFiles()))
+                .filter(file -> InputFormat.fromFile(file) == InputFormat.JSON)
+                .sorted(Comparator.comparingInt(Main::fileConsumer))
+                .toList();
+
+        Path workDirectory = Files.createTempDirectory("bank-format-check");
+        ObjectMapper jsonMapper = new ObjectMapper();
+        int differences = 0;
+        for (InputFormat format : formats) {
+            ObjectMapper binaryMapper = format.createMapper();
+            for (File input : inputs) {
+                if (!sameOutput(input, format, workDirectory, jsonMapper, binaryMapper)) {
+                    differences++;
+                }
+            }
+        }
+        if (differences > 0) {
+            throw new IOException(differences + " binary inputs gave a different output");
+        }
+    }
+
+    /**
+     * Converts one input file, runs both versions and compares their results.
+     * @param input the JSON file, in the tests directory
+     * @param format the binary format
+     * @param workDirectory where the converted file and the results are written
+     * @param jsonMapper the mapper for the JSON file
+     * @param binaryMapper the mapper for the binary format
+     * @return true if both results are the same
+     * @throws IOException if a file cannot be converted or run
+     */
+    private static boolean sameOutput(final File input, final InputFormat format,
+                                      final Path workDirectory,
+                                      final ObjectMapper jsonMapper,
+                                      final ObjectMapper binaryMapper) throws IOException {
+        String name = input.getName().replaceFirst("\\.json$", format.getExtension());
+        File binary = workDirectory.resolve(name).toFile();
+        InputConverter.convert(input, binary, jsonMapper, binaryMapper);
+
+        Path jsonResult = workDirectory.resolve(input.getName() + ".out");
+        Path binaryResult = workDirectory.resolve(name + ".out");
+        Main.action(input.getName(), jsonResult.toString());
+        // action resolves the input against the tests directory
+        Path testsDirectory = Path.of(CheckerConstants.TESTS_PATH).toAbsolutePath();
+        Main.action(testsDirectory.relativize(binary.toPath().toAbsolutePath()).toString(),
+                binaryResult.toString());
+
+        boolean same = Files.mismatch(jsonResult, binaryResult) == -1;
+        System.out.println((same ? "OK   " : "DIFF ") + input.getName() + " -> " + name);
+        return same;
+    }
+}
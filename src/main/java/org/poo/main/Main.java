@@ -1,21 +1,24 @@
 package org.poo.main;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectWriter;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import org.poo.checker.Checker;
 import org.poo.checker.CheckerConstants;
-import org.poo.commands.CommandExecutor;
+import org.poo.engine.BankEngine;
+import org.poo.engine.CommandPipeline;
+import org.poo.engine.ExecutionStrategy;
+import org.poo.engine.ExecutionStrategyFactory;
+import org.poo.engine.ScheduledExecution;
+import org.poo.engine.StageStats;
 import org.poo.fileio.CommandInput;
+import org.poo.fileio.CommandStreamReader;
+import org.poo.fileio.InputFormat;
+import org.poo.fileio.MappedCommandReader;
 import org.poo.fileio.ObjectInput;
+import org.poo.fileio.OutputSink;
+import org.poo.fileio.StreamingOutputSink;
 import org.poo.fileio.UserInput;
 import org.poo.fileio.CommerciantInput;
 import org.poo.fileio.ExchangeInput;
-import org.poo.models.User;
-import org.poo.services.Commerciant;
-import org.poo.services.CurrencyConverter;
-import org.poo.services.ExchangeRate;
-import org.poo.utils.Utils;
 
 import java.io.File;
 import java.io.IOException;
@@ -23,15 +26,35 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.List;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * The entry point to this homework. It runs the checker that tests your implementation.
  */
 public final class Main {
+    private static final String INPUT_MODE_PROPERTY = "bank.input";
+    private static final String STREAMING_INPUT = "streaming";
+    private static final String MAPPED_INPUT = "mapped";
+    private static final String BATCH_MODE_PROPERTY = "bank.batch";
+    private static final String PARALLEL_BATCH = "parallel";
+    private static final String EXECUTOR_PROPERTY = "bank.executor";
+    private static final String SERIAL_EXECUTOR = "serial";
+    private static final String PIPELINE_PROPERTY = "bank.pipeline";
+    private static final String PIPELINE_STATS_PROPERTY = "bank.pipeline.stats";
+    private static final String SCHEDULE_STATS_PROPERTY = "bank.schedule.stats";
+    private static final int PIPELINE_CAPACITY = 1024;
+    private static final String SPLIT_TIMEOUT_PROPERTY = "bank.splitPaymentTimeout";
+
     /**
      * for coding style
      */
@@ -74,76 +97,177 @@ public final class Main {
     }
 
     /**
+     * Runs an input file together with every other input file that has no result yet,
+     * each on its own worker (-Dbank.batch=parallel). The result files of the others are
+     * created here, before they run, so the loop of main finds them and skips them.
+     * Each file gets its own engine, so the generated IBANs and card numbers are
+     * the same as in a sequential run. The biggest files are started first, so that
+     * a long file does not end up running alone at the end of the batch.
+     * @param filePath1 the input file asked for
+     * @param filePath2 the output file of that input
+     * @throws IOException if one of the files cannot be read or written
+     */
+    private static void processInParallel(final String filePath1,
+                                          final String filePath2) throws IOException {
+        Map<File, String> batch = new HashMap<>();
+        batch.put(new File(CheckerConstants.TESTS_PATH + filePath1), filePath2);
+        File directory = new File(CheckerConstants.TESTS_PATH);
+        for (File file : Objects.requireNonNull(directory.listFiles())) {
+            String filepath = CheckerConstants.OUT_PATH + file.getName();
+            if (!file.getName().equals(filePath1) && new File(filepath).createNewFile()) {
+                batch.put(file, filepath);
+            }
+        }
+        List<File> bySize = new ArrayList<>(batch.keySet());
+        bySize.sort(Comparator.comparingLong(File::length).reversed());
+
+        List<Future<?>> results = new ArrayList<>();
+        try (ExecutorService workers = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors())) {
+            for (File file : bySize) {
+                results.add(workers.submit(() -> {
+                    processFile(file.getName(), batch.get(file));
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while running the input files", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Runs the commands of an input file. By default, the whole input is read in memory
+     * before the first command; with -Dbank.input=streaming the commands are pulled one
+     * at a time from the file instead. With -Dbank.input=mapped a JSON file is mapped in
+     * memory and its commands are parsed on several threads (see MappedCommandReader);
+     * the binary formats are then read as a stream. The input can be JSON, Smile or CBOR,
+     * depending on the extension of the file; the output is always JSON.
+     * With -Dbank.batch=parallel the first call runs all the input files at once
+     * (see processInParallel).
      * @param filePath1 for input file
      * @param filePath2 for output file
      * @throws IOException in case of exceptions to reading / writing
      */
     public static void action(final String filePath1,
                               final String filePath2) throws IOException {
+        if (PARALLEL_BATCH.equals(System.getProperty(BATCH_MODE_PROPERTY))) {
+            processInParallel(filePath1, filePath2);
+        } else {
+            processFile(filePath1, filePath2);
+        }
+    }
+
+    /**
+     * Runs the commands of one input file (see action).
+     * @param filePath1 for input file
+     * @param filePath2 for output file
+     * @throws IOException in case of exceptions to reading / writing
+     */
+    private static void processFile(final String filePath1,
+                                    final String filePath2) throws IOException {
         ObjectMapper objectMapper = new ObjectMapper();
         File file = new File(CheckerConstants.TESTS_PATH + filePath1);
-        ObjectInput inputData = objectMapper.readValue(file, ObjectInput.class);
-
-        ArrayNode output = objectMapper.createArrayNode();
-
-        // Extract the list of users from inputData
-        List<User> users = new ArrayList<>();
+        ObjectMapper inputMapper = InputFormat.fromFile(file).createMapper();
 
-        // Create the users (with empty accounts) from the input data
-        for (UserInput userInput : inputData.getUsers()) {
-            users.add(new User(userInput.getFirstName(),
-                    userInput.getLastName(),
-                    userInput.getEmail(),
-                    userInput.getBirthDate(),
-                    userInput.getOccupation()));
-        }
-
-        // Extract the list of exchange rates from inputData
-        List<ExchangeRate> exchangeRates = new ArrayList<>();
-        if (inputData.getExchangeRates() != null) {
-            for (ExchangeInput exchangeInput : inputData.getExchangeRates()) {
-                exchangeRates.add(new ExchangeRate(
-                        exchangeInput.getFrom(),
-                        exchangeInput.getTo(),
-                        exchangeInput.getRate()
-                ));
+        String inputMode = System.getProperty(INPUT_MODE_PROPERTY);
+        if (MAPPED_INPUT.equals(inputMode) && InputFormat.fromFile(file) == InputFormat.JSON) {
+            try (MappedCommandReader reader = new MappedCommandReader(inputMapper, file,
+                    Runtime.getRuntime().availableProcessors())) {
+                run(reader.getUsers(), reader.getExchangeRates(), reader.getCommerciants(),
+                        reader, objectMapper, filePath2);
             }
-        }
-        CurrencyConverter currencyConverter = new CurrencyConverter(exchangeRates);
-
-        // Extract the list of commercianți
-        List<Commerciant> commerciants = new ArrayList<>();
-        if (inputData.getCommerciants() != null) {
-            for (CommerciantInput commercInput : inputData.getCommerciants()) {
-                commerciants.add(new Commerciant(
-                        commercInput.getCommerciant(),
-                        commercInput.getId(),
-                        commercInput.getAccount(),
-                        commercInput.getType(),
-                        commercInput.getCashbackStrategy()
-                ));
+        } else if (STREAMING_INPUT.equals(inputMode) || MAPPED_INPUT.equals(inputMode)) {
+            try (CommandStreamReader reader = new CommandStreamReader(inputMapper, file)) {
+                run(reader.getUsers(), reader.getExchangeRates(), reader.getCommerciants(),
+                        reader, objectMapper, filePath2);
             }
+        } else {
+            ObjectInput inputData = inputMapper.readValue(file, ObjectInput.class);
+            run(inputData.getUsers(), inputData.getExchangeRates(),
+                    inputData.getCommerciants(), Arrays.asList(inputData.getCommands()).iterator(),
+                    objectMapper, filePath2);
         }
+    }
+
+    /**
+     * Builds a new engine from the users, the exchange rates and the commerciants
+     * and executes the commands on it.
+     * @param userInputs the users from the input
+     * @param exchangeInputs the exchange rates from the input (can be null)
+     * @param commerciantInputs the commerciants from the input (can be null)
+     * @param commands the commands, in the order they have to be executed
+     * @param objectMapper the mapper used for the output
+     * @param filePath2 for output file
+     * @throws IOException in case of exceptions to writing
+     */
+    private static void run(final UserInput[] userInputs,
+                            final ExchangeInput[] exchangeInputs,
+                            final CommerciantInput[] commerciantInputs,
+                            final Iterator<CommandInput> commands,
+                            final ObjectMapper objectMapper,
+                            final String filePath2) throws IOException {
+        // Every run gets its own engine, so nothing is left over from the previous files
+        BankEngine engine = new BankEngine.Builder(objectMapper)
+                .users(userInputs)
+                .exchangeRates(exchangeInputs)
+                .commerciants(commerciantInputs)
+                .splitPaymentTimeout(Integer.getInteger(SPLIT_TIMEOUT_PROPERTY, 0))
+                .build();
 
-        // Initialize CommandExecutor with context
-        CommandExecutor commandExecutor = new CommandExecutor(users, commerciants,
-                                                              objectMapper, output,
-                                                              currencyConverter);
-        // Execute each command
-        for (CommandInput command : inputData.getCommands()) {
-            try {
-                commandExecutor.execute(command);
-            } catch (Exception e) {
-                // Log or handle generic exceptions to avoid stopping execution
-                System.err.println("Error executing command: " + command.getCommand()
-                        + " " + e.getMessage() + " " + command.getTimestamp());
+        // The results are written to the output file as soon as each command finishes.
+        // With -Dbank.pipeline=true the reading and the writing run on their own threads,
+        // and -Dbank.pipeline.stats=true prints the statistics of each stage
+        try (OutputSink output = new StreamingOutputSink(objectMapper, new File(filePath2))) {
+            if (Boolean.getBoolean(PIPELINE_PROPERTY)) {
+                CommandPipeline pipeline = new CommandPipeline(commands, output,
+                        PIPELINE_CAPACITY);
+                try (pipeline) {
+                    execute(engine, pipeline.commands(), pipeline.output());
+                }
+                if (Boolean.getBoolean(PIPELINE_STATS_PROPERTY)) {
+                    for (StageStats stage : pipeline.getStats()) {
+                        System.out.println("Pipeline: " + stage);
+                    }
+                }
+            } else {
+                execute(engine, commands, output);
             }
         }
+    }
 
-        ObjectWriter objectWriter = objectMapper.writerWithDefaultPrettyPrinter();
-        objectWriter.writeValue(new File(filePath2), output);
-
-        Utils.resetRandom();
+    /**
+     * Executes the commands, in order, with the strategy chosen by -Dbank.executor
+     * (see ExecutionStrategy).
+     * @param engine the engine of the input file
+     * @param commands the commands, in the order they have to be executed
+     * @param output the destination of the results
+     * @throws IOException in case of exceptions to writing
+     */
+    private static void execute(final BankEngine engine, final Iterator<CommandInput> commands,
+                                final OutputSink output) throws IOException {
+        String mode = System.getProperty(EXECUTOR_PROPERTY, SERIAL_EXECUTOR);
+        ExecutionStrategy executor = ExecutionStrategyFactory
+                .createExecutionStrategy(mode, engine, output);
+        try (executor) {
+            // Execute each command
+            while (commands.hasNext()) {
+                executor.submit(commands.next());
+            }
+        }
+        // With -Dbank.schedule.stats=true a scheduled replay prints its dependency graph
+        if (executor instanceof ScheduledExecution scheduled
+                && Boolean.getBoolean(SCHEDULE_STATS_PROPERTY)) {
+            System.out.println("Schedule: " + scheduled.getGraph());
+        }
     }
 
     /**
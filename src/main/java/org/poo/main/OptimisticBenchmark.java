@@ -0,0 +1,170 @@
+package org.poo.main;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.poo.checker.CheckerConstants;
+import org.poo.utils.IdGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Times the optimistic executor against the serial one on an input with long histories.
+ * The input is generated: every user gets an account, a card and funds, then the users pay
+ * online in turns, so each user ends with thousands of transactions and the speculative
+ * runs of a window touch different users. The IBANs and the card numbers are the ones the
+ * bank will generate, since every run starts its IdGenerator from the same seeds.
+ * Each executor runs the input once to warm up, then the given number of times; the best
+ * time is printed, and both outputs must be the same. The output ends with the users and
+ * the transactions of the first one, so the histories are compared too.
+ *
+ * Usage: OptimisticBenchmark [users] [payments per user] [runs]
+ * Run it from the root of the project, like Main, without -Dbank.executor.
+ */
+public final class OptimisticBenchmark {
+    private static final String EXECUTOR_PROPERTY = "bank.executor";
+    private static final String[] EXECUTORS = {"serial", "optimistic"};
+    private static final int DEFAULT_USERS = 16;
+    private static final int DEFAULT_PAYMENTS = 4000;
+    private static final int DEFAULT_RUNS = 3;
+    private static final int FUNDS = 1_000_000_000;
+    private static final int COMMERCIANTS = 4;
+    private static final int FIRST_COMMERCIANT_ID = 100;
+    private static final int PAYMENT_AMOUNTS = 7;
+    private static final long NANOS_PER_MILLI = 1_000_000;
+
+    /**
+     * for coding style
+     */
+    private OptimisticBenchmark() {
+    }
+
+    /**
+     * @param args the number of users, of payments of each user and of timed runs
+     * @throws IOException if the input cannot be written or run, or the outputs differ
+     */
+    public static void main(final String[] args) throws IOException {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_USERS;
+        int payments = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PAYMENTS;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_RUNS;
+
+        Path workDirectory = Files.createTempDirectory("bank-optimistic-benchmark");
+        Path input = workDirectory.resolve("large_ledger.json");
+        new ObjectMapper().writeValue(input.toFile(), generate(users, payments));
+        // action resolves the input against the tests directory
+        String inputName = Path.of(CheckerConstants.TESTS_PATH).toAbsolutePath()
+                .relativize(input.toAbsolutePath()).toString();
+        System.out.println(users + " users, " + payments + " payments each, "
+                + Runtime.getRuntime().availableProcessors() + " processors");
+
+        // The commands trace themselves on the standard output, which is not timed
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        List<Path> results = new ArrayList<>();
+        for (String executor : EXECUTORS) {
+            Path result = workDirectory.resolve(executor + ".out");
+            results.add(result);
+            System.setProperty(EXECUTOR_PROPERTY, executor);
+            Main.action(inputName, result.toString());
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < runs; run++) {
+                long start = System.nanoTime();
+                Main.action(inputName, result.toString());
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            console.println(executor + ": " + best / NANOS_PER_MILLI + " ms");
+        }
+        System.clearProperty(EXECUTOR_PROPERTY);
+        System.setOut(console);
+
+        if (Files.mismatch(results.get(0), results.get(1)) != -1) {
+            throw new IOException("The optimistic output differs from the serial one");
+        }
+    }
+
+    /**
+     * Builds the input: the users, the commerciants, then the commands.
+     * @param users the number of users
+     * @param payments the number of payments of each user
+     * @return the input, as a JSON document
+     */
+    private static ObjectNode generate(final int users, final int payments) {
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode root = mapper.createObjectNode();
+        ArrayNode userNodes = root.putArray("users");
+        ArrayNode commerciantNodes = root.putArray("commerciants");
+        root.putArray("exchangeRates");
+        ArrayNode commands = root.putArray("commands");
+
+        for (int i = 0; i < COMMERCIANTS; i++) {
+            commerciantNodes.addObject()
+                    .put("commerciant", "Shop" + i)
+                    .put("id", FIRST_COMMERCIANT_ID + i)
+                    .put("account", "RO00POOB000000000000000" + i)
+                    .put("type", "Food")
+                    .put("cashbackStrategy", "spendingThreshold");
+        }
+
+        IdGenerator ids = new IdGenerator();
+        int timestamp = 1;
+        List<String> emails = new ArrayList<>();
+        List<String> cards = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            String email = "user" + i + "@bank.ro";
+            emails.add(email);
+            userNodes.addObject()
+                    .put("firstName", "User")
+                    .put("lastName", String.valueOf(i))
+                    .put("email", email)
+                    .put("birthDate", "1990-01-01")
+                    .put("occupation", "engineer");
+            String iban = ids.generateIBAN();
+            cards.add(ids.generateCardNumber());
+            commands.addObject()
+                    .put("command", "addAccount")
+                    .put("email", email)
+                    .put("currency", "RON")
+                    .put("accountType", "classic")
+                    .put("timestamp", timestamp++);
+            commands.addObject()
+                    .put("command", "createCard")
+                    .put("account", iban)
+                    .put("email", email)
+                    .put("timestamp", timestamp++);
+            commands.addObject()
+                    .put("command", "addFunds")
+                    .put("email", email)
+                    .put("account", iban)
+                    .put("amount", FUNDS)
+                    .put("timestamp", timestamp++);
+        }
+
+        for (int payment = 0; payment < payments; payment++) {
+            for (int i = 0; i < users; i++) {
+                commands.addObject()
+                        .put("command", "payOnline")
+                        .put("email", emails.get(i))
+                        .put("cardNumber", cards.get(i))
+                        .put("amount", 1 + (payment + i) % PAYMENT_AMOUNTS)
+                        .put("currency", "RON")
+                        .put("timestamp", timestamp++)
+                        .put("description", "Online payment")
+                        .put("commerciant", "Shop" + (payment + i) % COMMERCIANTS);
+            }
+        }
+        commands.addObject()
+                .put("command", "printUsers")
+                .put("timestamp", timestamp++);
+        commands.addObject()
+                .put("command", "printTransactions")
+                .put("email", emails.get(0))
+                .put("timestamp", timestamp);
+        return root;
+    }
+}
@@ -1,11 +1,19 @@
 package org.poo.models;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
+import lombok.ToString;
 
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.DoubleUnaryOperator;
 import org.poo.utils.DebugNumbers;
 
 
@@ -16,12 +24,28 @@ import org.poo.utils.DebugNumbers;
  * and change the interest rate of a savings account.
  * And also, for the second phase, this class contains new methods for adding associates
  * to a business account and verify the owner.
+ * The balance is kept as the bits of a double in an AtomicLong, so it can be changed
+ * with compare-and-set from several threads without losing updates (see debit, credit
+ * and debitIfAtLeast). The changes of several accounts at once go through transferTo
+ * and debitAll, and the reads of several balances at once through balancesOf; the three
+ * of them exclude each other on the accounts they share (see transferTo).
  */
 @Getter
 public class Account {
     private static final double INITIAL_LIMIT = 500; // in RON
     private final String iban;
-    private double balance;
+    // The bits of the balance, see Double.doubleToRawLongBits
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final AtomicLong balance = new AtomicLong(Double.doubleToRawLongBits(0.0));
+    // Held while the account takes part in a transfer, in a split payment or in a read of
+    // several balances. Only transferTo, debitAll and balancesOf take it; the single reads
+    // and the other debits and credits do not
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final ReentrantLock transferLock = new ReentrantLock();
     private double minimumBalance;
     private final String currency;
     private final String type;
@@ -37,17 +61,61 @@ public class Account {
     public Account(final String iban, final String currency,
                    final String type, final String ownerEmail) {
         this.iban = iban;
-        balance = 0.0;
         this.currency = currency;
         this.type = type;
         owner = ownerEmail;
         minimumBalance = 0.0;
-        cards = new ArrayList<>();
+        // Copied on write, so the readers of a snapshot can search it while it changes
+        cards = new CopyOnWriteArrayList<>();
         alias = null;
         interestRate = 0.0;
         spendingThreshold = 0.0;
     }
 
+    /**
+     * Creates a private copy of an account, with copies of its cards and associates.
+     * The copy can be changed without affecting the original (see copyStateFrom).
+     * @param other the account to be copied
+     */
+    public Account(final Account other) {
+        iban = other.iban;
+        balance.set(other.balance.get());
+        minimumBalance = other.minimumBalance;
+        currency = other.currency;
+        type = other.type;
+        owner = other.owner;
+        alias = other.alias;
+        interestRate = other.interestRate;
+        associates = new LinkedHashMap<>(other.associates);
+        spendingLimit = other.spendingLimit;
+        depositLimit = other.depositLimit;
+        spendingThreshold = other.spendingThreshold;
+        List<Card> copiedCards = new ArrayList<>();
+        for (Card card : other.cards) {
+            copiedCards.add(new Card(card.getCardNumber(), card.getStatus(), card.getType()));
+        }
+        cards = new CopyOnWriteArrayList<>(copiedCards);
+    }
+
+    /**
+     * Takes over the values of a copy of this account. The copy must have the same
+     * cards, in the same order, since only their status is taken over.
+     * @param copy the copy created from this account
+     */
+    public void copyStateFrom(final Account copy) {
+        balance.set(copy.balance.get());
+        minimumBalance = copy.minimumBalance;
+        alias = copy.alias;
+        interestRate = copy.interestRate;
+        associates = copy.associates;
+        spendingLimit = copy.spendingLimit;
+        depositLimit = copy.depositLimit;
+        spendingThreshold = copy.spendingThreshold;
+        for (int i = 0; i < cards.size(); i++) {
+            cards.get(i).setStatus(copy.cards.get(i).getStatus());
+        }
+    }
+
     /**
      * Find a specific card by its card number.
      * @param card the card number of the card
@@ -61,7 +129,7 @@ public class Account {
      * @param amount the amount to be added
      */
     public void addFunds(final double amount) {
-        balance += amount;
+        update(current -> current + amount);
     }
 
     /**
@@ -136,15 +204,206 @@ public class Account {
         return verifyBalance();
     }
 
+    /**
+     * Setter for the balance.
+     * @param newBalance the new balance of the account
+     */
+    public void setBalance(final double newBalance) {
+        balance.set(Double.doubleToRawLongBits(newBalance));
+    }
+
+    /**
+     * Takes an amount out of the account, in a single atomic step.
+     * @param amount the amount to be taken
+     * @return the new balance
+     */
+    public double debit(final double amount) {
+        return update(current -> verified(current) - amount);
+    }
+
+    /**
+     * Puts an amount into the account, in a single atomic step.
+     * @param amount the amount to be added
+     * @return the new balance
+     */
+    public double credit(final double amount) {
+        return update(current -> verified(current) + amount);
+    }
+
+    /**
+     * Takes an amount out of the account only if the balance stays at least at a floor,
+     * checking and changing the balance in a single atomic step.
+     * @param amount the amount to be taken
+     * @param floor the lowest balance allowed after the debit (the minimum balance, or 0)
+     * @return true if the amount was taken, false if the balance was too low
+     */
+    public boolean debitIfAtLeast(final double amount, final double floor) {
+        while (true) {
+            long bits = balance.get();
+            double newBalance = verified(Double.longBitsToDouble(bits)) - amount;
+            if (newBalance < floor) {
+                return false;
+            }
+            if (balance.compareAndSet(bits, Double.doubleToRawLongBits(newBalance))) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Moves money from this account to another one. The debit is a single check-and-debit
+     * (see debitIfAtLeast) and the credit is only made if the debit was.
+     * The transfer locks of the two accounts are held during the transfer, taken in the
+     * order of their IBANs, so two transfers between the same accounts, in opposite
+     * directions, cannot deadlock. The reads of several balances take the same locks
+     * (see balancesOf), so they see the transfer whole or not at all. A single getBalance
+     * does not take them: between the debit and the credit it can find the money in
+     * neither account, so a reader that compares or sums several accounts must use
+     * balancesOf.
+     * @param receiver the account that receives the money (can be this account)
+     * @param amount the amount taken from this account, fee included
+     * @param floor the lowest balance allowed for this account after the debit
+     * @param receivedAmount the amount added to the receiver, in its currency
+     * @return true if the transfer was made, false if this account has too little money
+     */
+    public boolean transferTo(final Account receiver, final double amount, final double floor,
+                              final double receivedAmount) {
+        Account first = this;
+        Account second = receiver;
+        if (iban.compareTo(receiver.iban) > 0) {
+            first = receiver;
+            second = this;
+        }
+        first.transferLock.lock();
+        second.transferLock.lock();
+        try {
+            if (!debitIfAtLeast(amount, floor)) {
+                return false;
+            }
+            receiver.credit(receivedAmount);
+            return true;
+        } finally {
+            second.transferLock.unlock();
+            first.transferLock.unlock();
+        }
+    }
+
+    /**
+     * Takes an amount out of each of the given accounts, all or nothing. Each account is
+     * debited with a single check-and-debit: its balance minus its amount must stay above
+     * its minimum balance. If one of them fails, the accounts debited before it get their
+     * amounts back, so no account ends below its minimum even if other payments change it
+     * meanwhile. The locks of the accounts are taken in the order of their IBANs, like in
+     * transferTo, so the transfers and the split payments that share accounts run one
+     * after the other and never deadlock.
+     * @param accounts the accounts, in the order of the payment
+     * @param amounts the amount taken from each account, in its currency
+     * @return -1 if all the accounts were debited, or the index of the first account
+     *         that does not have enough funds
+     */
+    public static int debitAll(final List<Account> accounts, final List<Double> amounts) {
+        TreeMap<String, Account> lockOrder = lockAll(accounts);
+        try {
+            for (int i = 0; i < accounts.size(); i++) {
+                Account account = accounts.get(i);
+                // The balance must stay strictly above the minimum
+                if (!account.debitIfAtLeast(amounts.get(i),
+                        Math.nextUp(account.minimumBalance))) {
+                    for (int j = 0; j < i; j++) {
+                        accounts.get(j).credit(amounts.get(j));
+                    }
+                    return i;
+                }
+            }
+            return -1;
+        } finally {
+            unlockAll(lockOrder);
+        }
+    }
+
+    /**
+     * Reads the balances of several accounts as a single step. The transfer locks of the
+     * accounts are held while they are read, taken in the order of their IBANs like in
+     * transferTo and debitAll, so a transfer or a split payment between them is seen
+     * whole or not at all.
+     * @param accounts the accounts (the same account can appear several times)
+     * @return the balance of each account, in the order of the list
+     */
+    public static double[] balancesOf(final List<Account> accounts) {
+        TreeMap<String, Account> lockOrder = lockAll(accounts);
+        try {
+            double[] balances = new double[accounts.size()];
+            for (int i = 0; i < balances.length; i++) {
+                balances[i] = accounts.get(i).getBalance();
+            }
+            return balances;
+        } finally {
+            unlockAll(lockOrder);
+        }
+    }
+
+    /**
+     * Takes the transfer locks of the accounts, in the order of their IBANs.
+     * @return the locked accounts, in that order
+     */
+    private static TreeMap<String, Account> lockAll(final List<Account> accounts) {
+        TreeMap<String, Account> lockOrder = new TreeMap<>();
+        for (Account account : accounts) {
+            lockOrder.putIfAbsent(account.iban, account);
+        }
+        for (Account account : lockOrder.values()) {
+            account.transferLock.lock();
+        }
+        return lockOrder;
+    }
+
+    private static void unlockAll(final TreeMap<String, Account> lockOrder) {
+        for (Account account : lockOrder.descendingMap().values()) {
+            account.transferLock.unlock();
+        }
+    }
+
+    /**
+     * Applies a change to the balance, retrying if another thread changed it meanwhile.
+     * @return the new balance
+     */
+    private double update(final DoubleUnaryOperator change) {
+        while (true) {
+            long bits = balance.get();
+            double newBalance = change.applyAsDouble(Double.longBitsToDouble(bits));
+            if (balance.compareAndSet(bits, Double.doubleToRawLongBits(newBalance))) {
+                return newBalance;
+            }
+        }
+    }
+
     /**
      * Verifies the balance of the account.
      * @return the balance of the account.
      */
     private double verifyBalance() {
-        double newBalance = DebugNumbers.DEFAULT_BALANCE.getValue();
-        if (balance == DebugNumbers.THRESHOLD_BALANCE.getValue()) {
-            balance = newBalance;
+        long bits = balance.get();
+        double current = Double.longBitsToDouble(bits);
+        double newBalance = verified(current);
+        if (newBalance != current) {
+            balance.compareAndSet(bits, Double.doubleToRawLongBits(newBalance));
+        }
+        return newBalance;
+    }
+
+    private static double verified(final double current) {
+        if (current == DebugNumbers.THRESHOLD_BALANCE.getValue()) {
+            return DebugNumbers.DEFAULT_BALANCE.getValue();
         }
-        return balance;
+        return current;
+    }
+
+    /**
+     * The current balance, for equals, hashCode and toString.
+     */
+    @EqualsAndHashCode.Include
+    @ToString.Include(name = "balance")
+    private double balanceValue() {
+        return Double.longBitsToDouble(balance.get());
     }
 }
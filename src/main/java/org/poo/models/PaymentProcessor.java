@@ -1,30 +1,52 @@
 package org.poo.models;
 
 import org.poo.commands.CommandContext;
+import org.poo.utils.TimerWheel;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 
+/**
+ * Keeps the pending split payments of one bank and dispatches the responses to them.
+ * Each BankEngine owns its own processor.
+ *
+ * The pending payments are indexed by the email of each involved user and the type of
+ * the payment, in the order they were created, so a response only looks at the payments
+ * of its own user and type. The response is given to each of them, oldest first, until
+ * one of them is completed. A payment that is completed, by a response or by its expiry,
+ * is removed at once from the queues of all its users, so the queues only hold pending
+ * payments; nothing is removed from a collection while it is iterated with a for-each.
+ *
+ * With a timeout, each payment also waits in a TimerWheel driven by the timestamps of the
+ * commands. The payments that are still pending when their timeout passes are rejected
+ * (see SplitPayment.expire); the completed ones are only skipped when their time comes.
+ * The processor is used by one thread at a time (the engine runs serially when the split
+ * payments have a timeout), so the queues need no lock; the compare-and-set of the
+ * payment still decides whether a response or the expiry completes it.
+ */
 public final class PaymentProcessor {
-    private static PaymentProcessor instance = null; // Singleton instance
+    private final Map<PendingKey, Deque<SplitPayment>> pending = new HashMap<>();
+    private final int timeout;
+    private final TimerWheel<SplitPayment> expiries = new TimerWheel<>(0);
+    private int activeCount;
 
-    private List<SplitPayment> commands = new ArrayList<>();
-
-    // Private constructor for the Singleton pattern
-    private PaymentProcessor() {
+    /**
+     * Creates a processor whose split payments never expire.
+     */
+    public PaymentProcessor() {
+        this(0);
     }
 
     /**
-     * Method to retrieve the singleton instance of PaymentProcessor.
-     * Ensures that only one instance of this class exists.
-     *
-     * @return the singleton instance of PaymentProcessor
+     * Creates a processor whose split payments expire after the given time.
+     * @param timeout the number of timestamps a payment waits for the responses,
+     *                or 0 for no limit
      */
-    public static PaymentProcessor getInstance() {
-        if (instance == null) {
-            instance = new PaymentProcessor();
-        }
-        return instance;
+    public PaymentProcessor(final int timeout) {
+        this.timeout = timeout;
     }
 
     /**
@@ -33,7 +55,35 @@ public final class PaymentProcessor {
      * @param payment the SplitPayment command to be added
      */
     public void addSplitPayment(final SplitPayment payment) {
-        commands.add(payment);
+        for (String email : payment.getEmailToAccount().keySet()) {
+            pending.computeIfAbsent(new PendingKey(email, payment.getSplitPaymentType()),
+                    key -> new ArrayDeque<>()).addLast(payment);
+        }
+        activeCount++;
+        if (timeout > 0) {
+            expiries.schedule(payment, (long) payment.getTimestamp() + timeout);
+        }
+    }
+
+    /**
+     * Moves the clock of the split payments to the timestamp of the next command and
+     * rejects the payments that expired before it. Does nothing without a timeout.
+     *
+     * @param timestamp the timestamp of the command about to be executed
+     * @param context   the CommandContext the rejections are logged with
+     */
+    public void advanceClock(final int timestamp, final CommandContext context) {
+        if (timeout <= 0) {
+            return;
+        }
+        expiries.advanceTo(timestamp, payment -> {
+            if (payment.expire(context)) {
+                System.out.println("Split payment from " + payment.getTimestamp()
+                        + " expired at " + timestamp);
+                removePending(payment);
+                activeCount--;
+            }
+        });
     }
 
     /**
@@ -48,51 +98,72 @@ public final class PaymentProcessor {
                                 final CommandContext context, final String paymentType) {
         System.out.println("Processing response for email: " + email
                             + " with isAccepted: " + isAccepted);
-        System.out.println("Commands: " + commands.size());
-
-        // Iterate through the list of split payment commands
-        for (SplitPayment command : commands) {
-            System.out.println("Command: " + command.getSplitPaymentType());
+        PendingKey key = new PendingKey(email, paymentType);
+        Deque<SplitPayment> queue = pending.get(key);
+        if (queue == null) {
+            System.out.println("No active split payment found for email: " + email);
+            return;
+        }
 
-            // Skip commands that do not match the specified payment type
-            if (!command.getSplitPaymentType().equals(paymentType)) {
+        SplitPayment completed = null;
+        Iterator<SplitPayment> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            SplitPayment command = iterator.next();
+            if (command.isCompleted()) {
+                // Completed by the response of another user
+                iterator.remove();
                 continue;
             }
-
-            // Get the account IBAN associated with the user's email
-            String iban = command.getEmailToAccount().get(email);
-            if (iban == null) {
-                System.out.println("Email not found in command");
-                continue;
+            String result = command.processResponse(command.getEmailToAccount().get(email),
+                    isAccepted, context);
+            if (result != null) {
+                System.out.println(result); // Print the result if available
+            }
+            if (command.isCompleted()) {
+                System.out.println("Command completed");
+                iterator.remove();
+                activeCount--;
+                completed = command;
+                break;
             }
+        }
+        if (completed != null) {
+            // The payment also waits in the queues of the other users
+            removePending(completed);
+        } else if (queue.isEmpty()) {
+            pending.remove(key);
+        }
+    }
 
-            // Process the response if the payment is not completed and the account is involved
-            if (!command.isCompleted() && command.getAccounts().contains(iban)) {
-                String result = command.processResponse(iban, isAccepted, context);
-                if (command.isCompleted()) {
-                    System.out.println("Command completed");
-                    commands.remove(command); // Remove the command if it is completed
-                }
-                if (result != null) {
-                    System.out.println(result); // Print the result if available
+    /**
+     * Removes a completed payment from the queues of all its users. The payments are
+     * compared by identity, since two different payments can be equal.
+     * @param payment the completed payment
+     */
+    private void removePending(final SplitPayment payment) {
+        for (String email : payment.getEmailToAccount().keySet()) {
+            PendingKey key = new PendingKey(email, payment.getSplitPaymentType());
+            Deque<SplitPayment> queue = pending.get(key);
+            if (queue != null) {
+                queue.removeIf(other -> other == payment);
+                if (queue.isEmpty()) {
+                    pending.remove(key);
                 }
             }
         }
-        System.out.println("No active split payment found for email: " + email);
     }
 
     /**
      * Helper function:
-     * Prints details of all active (incomplete) split payment commands.
+     * Prints the number of active (incomplete) split payments.
      */
     public void printActiveCommands() {
-        for (SplitPayment command : commands) {
-            if (!command.isCompleted()) {
-                System.out.println("Active splitPayment: "
-                        + command.getSplitPaymentType() + " at " + command.getTimestamp());
-            }
-        }
+        System.out.println("Active split payments: " + activeCount);
     }
-}
-
 
+    /**
+     * The user and the type a response is given for.
+     */
+    private record PendingKey(String email, String type) {
+    }
+}
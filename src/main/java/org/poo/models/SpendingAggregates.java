@@ -0,0 +1,207 @@
+package org.poo.models;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Running totals of the card payments of one user, updated every time a payment is added
+ * to the transactions of the user (see User.addTransaction).
+ * There is one series for each account, currency and commerciant: the timestamps of the
+ * payments, in order, with the prefix sums of their amounts. The total of a series over an
+ * interval is the difference of two prefix sums, found with two binary searches, so a report
+ * costs O(series * log payments) instead of a pass over the transactions of the interval.
+ *
+ * The map of the series is copied on write: a snapshot shares it in O(1), and the next
+ * payment recorded replaces it with a copy whose series share the arrays of the old ones.
+ * A payment in timestamp order is written after the end of the arrays, which the snapshot
+ * never reads; one out of order, or one that fills the arrays, gets arrays of its own.
+ */
+public final class SpendingAggregates {
+    private static final String CARD_PAYMENT = "Card payment";
+    private static final int INITIAL_CAPACITY = 8;
+
+    private Map<Key, Series> series = new LinkedHashMap<>();
+    // True when the map is shared with a snapshot and must be copied before a change
+    private boolean shared;
+    private final boolean snapshot;
+
+    public SpendingAggregates() {
+        snapshot = false;
+    }
+
+    private SpendingAggregates(final Map<Key, Series> series) {
+        this.series = series;
+        shared = true;
+        snapshot = true;
+    }
+
+    /**
+     * Creates a private copy of the totals of a user (see User(User)).
+     * @param other the totals to be copied
+     */
+    public SpendingAggregates(final SpendingAggregates other) {
+        snapshot = false;
+        for (Map.Entry<Key, Series> entry : other.series.entrySet()) {
+            series.put(entry.getKey(), new Series(entry.getValue()));
+        }
+    }
+
+    /**
+     * The totals recorded so far, not changed by the next payments (see User.snapshot).
+     * Nothing can be recorded in a snapshot.
+     * @return the snapshot
+     */
+    public SpendingAggregates snapshot() {
+        shared = true;
+        return new SpendingAggregates(series);
+    }
+
+    /**
+     * Adds a transaction to the totals, if it is a card payment.
+     * @param transaction the transaction added to the user
+     */
+    void record(final Transaction transaction) {
+        if (!CARD_PAYMENT.equals(transaction.getDescription())) {
+            return;
+        }
+        if (snapshot) {
+            throw new UnsupportedOperationException("A snapshot of the totals is read-only");
+        }
+        if (shared) {
+            Map<Key, Series> copy = new LinkedHashMap<>();
+            for (Map.Entry<Key, Series> entry : series.entrySet()) {
+                copy.put(entry.getKey(), entry.getValue().share());
+            }
+            series = copy;
+            shared = false;
+        }
+        Key key = new Key(transaction.getAccount(), transaction.getAmountCurrency(),
+                transaction.getCommerciant());
+        series.computeIfAbsent(key, ignored -> new Series())
+                .add(transaction.getTimestamp(), transaction.getAmount());
+    }
+
+    /**
+     * The totals of the card payments made in an interval, one for each account, currency
+     * and commerciant that has payments in it.
+     * @param startTimestamp the first timestamp of the interval
+     * @param endTimestamp the last timestamp of the interval
+     * @return the totals, in the currency of their payments
+     */
+    public List<Total> totalsBetween(final int startTimestamp, final int endTimestamp) {
+        List<Total> totals = new ArrayList<>();
+        for (Map.Entry<Key, Series> entry : series.entrySet()) {
+            Series payments = entry.getValue();
+            int from = payments.lowerBound(startTimestamp);
+            int to = endTimestamp == Integer.MAX_VALUE ? payments.size
+                    : Math.max(from, payments.lowerBound(endTimestamp + 1));
+            if (to > from) {
+                Key key = entry.getKey();
+                totals.add(new Total(key.account(), key.currency(), key.commerciant(),
+                        payments.prefix[to] - payments.prefix[from]));
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * The total of the card payments of an account to a commerciant, in an interval.
+     * @param account the IBAN of the account the payments were made from
+     * @param currency the currency of the amounts
+     * @param commerciant the commerciant that received the payments
+     * @param amount the sum of the amounts
+     */
+    public record Total(String account, String currency, String commerciant, double amount) {
+    }
+
+    private record Key(String account, String currency, String commerciant) {
+    }
+
+    /**
+     * The payments of one key, sorted by timestamp. prefix[i] is the sum of the first i
+     * amounts. The payments come almost always in timestamp order and are appended; one that
+     * comes out of order is inserted after the payments with the same timestamp and the
+     * prefix sums after it are computed again.
+     */
+    private static final class Series {
+        private int[] timestamps;
+        private double[] amounts;
+        private double[] prefix;
+        private int size;
+        // True when the first size entries of the arrays are also read by a snapshot
+        private boolean arraysShared;
+
+        Series() {
+            timestamps = new int[INITIAL_CAPACITY];
+            amounts = new double[INITIAL_CAPACITY];
+            prefix = new double[INITIAL_CAPACITY + 1];
+        }
+
+        Series(final Series other) {
+            timestamps = Arrays.copyOf(other.timestamps, other.timestamps.length);
+            amounts = Arrays.copyOf(other.amounts, other.amounts.length);
+            prefix = Arrays.copyOf(other.prefix, other.prefix.length);
+            size = other.size;
+        }
+
+        private Series(final int[] timestamps, final double[] amounts, final double[] prefix,
+                       final int size) {
+            this.timestamps = timestamps;
+            this.amounts = amounts;
+            this.prefix = prefix;
+            this.size = size;
+        }
+
+        /**
+         * A series with the same payments and the same arrays, for the copy of a shared map.
+         */
+        Series share() {
+            Series copy = new Series(timestamps, amounts, prefix, size);
+            copy.arraysShared = true;
+            return copy;
+        }
+
+        void add(final int timestamp, final double amount) {
+            boolean inOrder = size == 0 || timestamp >= timestamps[size - 1];
+            if (size == timestamps.length || !inOrder && arraysShared) {
+                int capacity = size == timestamps.length ? size * 2 : timestamps.length;
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                amounts = Arrays.copyOf(amounts, capacity);
+                prefix = Arrays.copyOf(prefix, capacity + 1);
+                arraysShared = false;
+            }
+            int index = size;
+            if (!inOrder) {
+                index = lowerBound(timestamp + 1);
+                System.arraycopy(timestamps, index, timestamps, index + 1, size - index);
+                System.arraycopy(amounts, index, amounts, index + 1, size - index);
+            }
+            timestamps[index] = timestamp;
+            amounts[index] = amount;
+            size++;
+            for (int i = index; i < size; i++) {
+                prefix[i + 1] = prefix[i] + amounts[i];
+            }
+        }
+
+        /**
+         * The index of the first payment made at or after a timestamp.
+         */
+        int lowerBound(final int timestamp) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (timestamps[middle] < timestamp) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -4,16 +4,35 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
 import org.poo.commands.CommandContext;
 import org.poo.exceptions.CurrencyConversionException;
 
 import static org.poo.commands.CommandErrors.addError;
 
+/**
+ * A split payment waiting for the responses of its accounts.
+ * The responses are kept on the payment itself: every distinct IBAN has a slot, with one
+ * bit in an atomic bitset that is set when the account accepts, and a counter holds the
+ * number of accounts that did not accept yet. An IBAN that appears several times in the
+ * payment answers for all its shares at once. Only the response whose decrement takes the
+ * counter to 0 tries to complete the payment, and the responses to different payments never
+ * touch shared state.
+ * The payment leaves the PENDING state exactly once, with a compare-and-set: the first of
+ * the last accept, a reject or the expiry wins, and everything after it is ignored.
+ */
 @Data
 public class SplitPayment {
-    private static List<String> acceptedResponsesCustom = new ArrayList<>();
-    private static List<String> acceptedResponsesEqual = new ArrayList<>();
+    private static final String REJECTED = "One user rejected the payment.";
+    private static final String EXPIRED = "The split payment expired.";
+    private static final int PENDING = 0;
+    private static final int DONE = 1;
 
     private final String splitPaymentType; // Type of split payment ("equal" or "custom")
     private final List<String> accounts; // List of IBANs involved in the split payment
@@ -22,10 +41,28 @@ public class SplitPayment {
     private final String currency; // Currency of the payment
     private final double amount; // Total amount of the split payment
     private final int timestamp; // Timestamp of the payment creation
-    private final Map<String, Boolean> responses = new HashMap<>(); // Tracks user responses
-    private boolean isCompleted = false; // Status of payment completion
+    // PENDING until the payment is processed, rejected or expired, then DONE
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final AtomicInteger state = new AtomicInteger(PENDING);
     private final Map<String, String> emailToAccount; // Maps user emails to their IBANs
     private final Map<String, Double> accountBalances; // Maps IBANs to their current balances
+    // The slot of each distinct IBAN in the responses
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final Map<String, Integer> slots = new HashMap<>();
+    // One bit for each slot, set when the account accepted the payment
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final AtomicLongArray accepted;
+    // The number of slots that did not accept yet
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private final AtomicInteger pending;
 
     // Constructor
     public SplitPayment(final String splitPaymentType, final List<String> accounts,
@@ -40,10 +77,12 @@ public class SplitPayment {
         this.amount = amount;
         this.timestamp = timestamp;
 
-        // Initialize responses for all accounts to null (unprocessed)
+        // Every distinct account gets a slot, none of them has accepted yet
         for (String account : accounts) {
-            responses.put(account, null);
+            slots.putIfAbsent(account, slots.size());
         }
+        accepted = new AtomicLongArray((slots.size() + Long.SIZE - 1) / Long.SIZE);
+        pending = new AtomicInteger(slots.size());
         this.emailToAccount = emailToAccount;
         this.accountBalances = accountBalances;
     }
@@ -59,48 +98,94 @@ public class SplitPayment {
     public String processResponse(final String account,
                                   final boolean isAccepted,
                                   final CommandContext context) {
-        if (!accounts.contains(account)) {
+        Integer slot = slots.get(account);
+        if (slot == null) {
             return "One of the accounts is invalid.";
         }
-
-        if (GlobalResponseTracker.hasResponded(account, this)) {
-            System.out.println("The account has already responded.");
+        if (isCompleted()) {
+            return "The payment is no longer pending.";
         }
 
-        // Record the global response
-        GlobalResponseTracker.addResponse(account, this, isAccepted);
-
-        // If a user rejects the payment, mark it as completed and reject it
+        // If a user rejects the payment, complete it and reject it
         if (!isAccepted) {
-            isCompleted = true;
-            rejectPayment(context);
-            return "One user rejected the payment.";
+            if (!complete()) {
+                return "The payment is no longer pending.";
+            }
+            rejectPayment(context, REJECTED);
+            return REJECTED;
         }
 
-        // Log responses of all accounts for debugging
-        System.out.println("Current responses status:");
-        GlobalResponseTracker.getResponsesForPayment(this).forEach((acc, response) -> {
-            System.out.println("Account: " + acc + ", Response: " + response);
-        });
-
-        // Check if all users have accepted the payment
-        boolean allAccepted = accounts.stream()
-                .allMatch(acc -> Boolean.TRUE.equals(GlobalResponseTracker.getResponse(acc, this)));
-
-        if (allAccepted) {
+        if (!accept(slot)) {
+            System.out.println("The account has already responded.");
+        } else if (pending.decrementAndGet() == 0) {
+            // Only the last accept gets here; it still loses to a reject or an expiry
+            if (!complete()) {
+                return "The payment is no longer pending.";
+            }
             processSplitPayment(context);
             return "Split payment of " + amount + " " + currency + " completed successfully.";
         }
+        System.out.println("Accounts that did not accept yet: " + pending.get());
 
         System.out.println("Payment not completed yet at account: " + account);
         return null;
     }
 
+    /**
+     * Sets the bit of a slot.
+     * @param slot the slot of the account
+     * @return true if the account had not accepted before
+     */
+    private boolean accept(final int slot) {
+        int index = slot / Long.SIZE;
+        long bit = 1L << (slot % Long.SIZE);
+        long bits = accepted.get(index);
+        while ((bits & bit) == 0) {
+            long witness = accepted.compareAndExchange(index, bits, bits | bit);
+            if (witness == bits) {
+                return true;
+            }
+            bits = witness;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if the payment was processed, rejected or expired.
+     * @return true if the payment no longer waits for responses
+     */
+    public boolean isCompleted() {
+        return state.get() != PENDING;
+    }
+
+    /**
+     * Moves the payment out of the PENDING state.
+     * @return true if this call did it, false if the payment was already completed
+     */
+    private boolean complete() {
+        return state.compareAndSet(PENDING, DONE);
+    }
+
+    /**
+     * Rejects the payment because not all the users answered in time.
+     * The users get the same error transactions as when one of them rejects it.
+     * @param context The command context.
+     * @return true if the payment expired, false if it was already completed
+     */
+    public boolean expire(final CommandContext context) {
+        if (!complete()) {
+            return false;
+        }
+        rejectPayment(context, EXPIRED);
+        return true;
+    }
+
     /**
      * Handles the rejection of the payment, creating error transactions.
      * @param context The command context.
+     * @param reason The error of the transactions.
      */
-    private void rejectPayment(final CommandContext context) {
+    private void rejectPayment(final CommandContext context, final String reason) {
         System.out.println("Reject split payment at " + timestamp);
 
         System.out.println("splitPaymentType: " + splitPaymentType);
@@ -132,7 +217,7 @@ public class SplitPayment {
             Transaction rejectTransaction = new Transaction.TransactionBuilder(timestamp,
                     "Split payment of " + String.format("%.2f", amount) + " " + currency,
                     account.getIban(), "error")
-                    .error("One user rejected the payment.")
+                    .error(reason)
                     .splitPaymentType(splitPaymentType)
                     .amount(amountForUser)
                     .amounts(amountsForUsers)
@@ -141,33 +226,28 @@ public class SplitPayment {
                     .build();
             user.addTransaction(rejectTransaction);
         }
-        isCompleted = true;
     }
 
     /**
      * Processes the split payment, deducting amounts from each account.
+     * The accounts are checked first; if all of them have enough funds, they are debited
+     * together with Account.debitAll, which checks and debits each of them in one step and
+     * gives the money back to all of them if one fails.
      * @param context The command context.
      */
     private void processSplitPayment(final CommandContext context) {
         System.out.println("Processing split payment at " + timestamp);
         // Check if the accounts exist and have enough funds
         List<Account> validAccounts = new ArrayList<>();
+        List<Double> convertedAmounts = new ArrayList<>();
         List<Account> invalidAccounts = new ArrayList<>();
-        String lastInvalidIban = null;
 
         System.out.println("splitPaymentType: " + splitPaymentType);
         System.out.println("accounts: " + accounts.size());
         for (int i = 0; i < accounts.size(); i++) {
             String iban = accounts.get(i);
             System.out.println("iban: " + iban);
-             double amountForUser;
-            if (splitPaymentType.equals("equal")) {
-                System.out.println("total amount: " + amount + " " + currency);
-                // amountsForUsers.set(i, amount / accounts.size());
-                amountForUser = amount / accounts.size();
-            } else {
-                amountForUser = amountsForUsers.get(i);
-            }
+            double amountForUser = amountForUser(i);
             System.out.println("Account: " + iban + " Amount: " + amountForUser);
             Account account = User.findAccountByIBAN(context.getUsers(), iban);
             if (account == null) {
@@ -185,10 +265,10 @@ public class SplitPayment {
                 if (account.getBalance() - convertedAmount <= account.getMinimumBalance()) {
                     System.out.println("Account " + account.getIban()
                             + " has insufficient funds for a split payment.");
-                    lastInvalidIban = account.getIban();
                     invalidAccounts.add(account);
                 } else {
                     validAccounts.add(account);
+                    convertedAmounts.add(convertedAmount);
                 }
             } catch (CurrencyConversionException e) {
                 addError(context.getOutput(),
@@ -199,76 +279,26 @@ public class SplitPayment {
         }
 
         System.out.println("S-a ajuns la invalidAccounts: " + invalidAccounts.size());
-        String firstInvalidIban = invalidAccounts.isEmpty()
-                                ? null : invalidAccounts.getFirst().getIban();
         if (!invalidAccounts.isEmpty()) {
-            for (int i = 0; i < accounts.size(); i++) {
-                String iban = accounts.get(i);
-                Account involvedAccount = User.findAccountByIBAN(context.getUsers(), iban);
-                if (involvedAccount != null) {
-                    double amountForUser;
-                    if (splitPaymentType.equals("equal")) {
-                        System.out.println("total amount: " + amount + " " + currency);
-                        amountForUser = amount / accounts.size();
-                    } else {
-                        amountForUser = amountsForUsers.get(i);
-                    }
-                    // Add a transaction to the user
-                    Transaction errorTransaction = new Transaction.TransactionBuilder(timestamp,
-                            "Split payment of " + String.format("%.2f", amount) + " " + currency,
-                            involvedAccount.getIban(), "error")
-                            .error("Account " + firstInvalidIban
-                                    + " has insufficient funds for a split payment.")
-                            .splitPaymentType(splitPaymentType)
-                            .amount(amountForUser)
-                            .amounts(amountsForUsers)
-                            .amountCurrency(currency)
-                            .involvedAccounts(accounts)
-                            .build();
-                    User user = User.findUserByAccount(context.getUsers(), involvedAccount);
-                    if (user == null) {
-                        return;
-                    }
-                    user.addTransaction(errorTransaction);
-                }
-            }
-            isCompleted = true;
+            rejectForInsufficientFunds(invalidAccounts.getFirst().getIban(), context);
+            return;
         }
 
-        if (validAccounts.size() != accounts.size()) {
+        // Make the payment for all the accounts at once, if they still have enough funds
+        int failed = Account.debitAll(validAccounts, convertedAmounts);
+        if (failed >= 0) {
+            rejectForInsufficientFunds(validAccounts.get(failed).getIban(), context);
             return;
         }
 
-        // Make the payment for each account if all accounts have enough funds
         System.out.println("S-a ajuns la validAccounts: " + validAccounts.size());
         for (int i = 0; i < validAccounts.size(); i++) {
             Account account = validAccounts.get(i);
-            // double amountForUser = amountsForUsers.get(i);
-            double amountForUser = 0;
-            if (splitPaymentType.equals("equal")) {
-                System.out.println("total amount: " + amount + " " + currency);
-                // amountsForUsers.set(i, amount / accounts.size());
-                amountForUser = amount / accounts.size();
-            } else {
-                System.out.println("amountsForUsers: " + amountsForUsers.get(i));
-                amountForUser = amountsForUsers.get(i);
-            }
+            double amountForUser = amountForUser(i);
             User user = User.findUserByAccount(context.getUsers(), account);
             if (user == null) {
                 return;
             }
-            double convertedAmount;
-            try {
-                convertedAmount = context.getCurrencyConverter().convertCurrency(amountForUser,
-                        currency, account.getCurrency());
-            } catch (CurrencyConversionException e) {
-                addError(context.getOutput(),
-                        "Currency conversion not supported for account: " + account.getIban(),
-                        timestamp, "splitPayment");
-                return;
-            }
-
-            account.setBalance(account.getBalance() - convertedAmount);
             // Add a transaction to the user
             System.out.println("Se adauga tranzacatie pentru userul " + user.getEmail()
                                 + " cu accountul " + account.getIban());
@@ -284,6 +314,50 @@ public class SplitPayment {
                     .build();
             user.addTransaction(successTransaction);
         }
-        isCompleted = true;
+    }
+
+    /**
+     * Adds an error transaction to every involved account, when one of them does not have
+     * enough funds, and completes the payment.
+     * @param invalidIban the first account without enough funds
+     * @param context The command context.
+     */
+    private void rejectForInsufficientFunds(final String invalidIban,
+                                            final CommandContext context) {
+        for (int i = 0; i < accounts.size(); i++) {
+            Account involvedAccount = User.findAccountByIBAN(context.getUsers(), accounts.get(i));
+            if (involvedAccount == null) {
+                continue;
+            }
+            // Add a transaction to the user
+            Transaction errorTransaction = new Transaction.TransactionBuilder(timestamp,
+                    "Split payment of " + String.format("%.2f", amount) + " " + currency,
+                    involvedAccount.getIban(), "error")
+                    .error("Account " + invalidIban
+                            + " has insufficient funds for a split payment.")
+                    .splitPaymentType(splitPaymentType)
+                    .amount(amountForUser(i))
+                    .amounts(amountsForUsers)
+                    .amountCurrency(currency)
+                    .involvedAccounts(accounts)
+                    .build();
+            User user = User.findUserByAccount(context.getUsers(), involvedAccount);
+            if (user == null) {
+                return;
+            }
+            user.addTransaction(errorTransaction);
+        }
+    }
+
+    /**
+     * The part of the payment of an account.
+     * @param index the position of the account in the payment
+     * @return the amount, in the currency of the payment
+     */
+    private double amountForUser(final int index) {
+        if (splitPaymentType.equals("equal")) {
+            return amount / accounts.size();
+        }
+        return amountsForUsers.get(index);
     }
 }
@@ -0,0 +1,68 @@
+package org.poo.models;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position inside the transaction list of a user, used to page through long histories.
+ * A cursor points to a transaction by its timestamp and by its sequence number among the
+ * transactions with the same timestamp, so a page can be found with a binary search
+ * instead of walking over the previous pages.
+ * Clients only see the cursor as an opaque string.
+ */
+public final class TransactionCursor {
+    private static final String SEPARATOR = ":";
+
+    private final int timestamp;
+    private final int sequence;
+
+    public TransactionCursor(final int timestamp, final int sequence) {
+        this.timestamp = timestamp;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Getter for the timestamp of the transaction the cursor points to.
+     * @return the timestamp
+     */
+    public int getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Getter for the position of the transaction among the ones with the same timestamp.
+     * @return the sequence number
+     */
+    public int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Encode the cursor as an opaque string.
+     * @return the encoded cursor
+     */
+    public String encode() {
+        String raw = timestamp + SEPARATOR + sequence;
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode a cursor received from a client.
+     * @param encoded the string returned by encode
+     * @return the decoded cursor
+     * @throws IllegalArgumentException if the string is not a valid cursor
+     */
+    public static TransactionCursor decode(final String encoded) throws IllegalArgumentException {
+        String raw = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+        String[] parts = raw.split(SEPARATOR);
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        int sequence = Integer.parseInt(parts[1]);
+        if (sequence < 0) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return new TransactionCursor(Integer.parseInt(parts[0]), sequence);
+    }
+}
@@ -0,0 +1,137 @@
+package org.poo.models;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * The transactions of a user, as a list that only grows at its end.
+ * A transaction is written in the array after the ones already in the list, and the array
+ * is replaced instead of changed when it is full or when the list is sorted, so the first
+ * length entries of an array never change once they are written. A snapshot keeps the
+ * array and the length of the moment it was taken: it costs O(1), does not see what is
+ * added later and can be read on another thread while the list keeps growing.
+ *
+ * A fork also starts from the transactions of the moment it was taken, without copying
+ * them, but it can grow: its own transactions go to an array of its own, after the shared
+ * base (see User.overlay). Sorting a fork copies the base into its array.
+ */
+public final class TransactionLedger extends AbstractList<Transaction>
+        implements RandomAccess {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final Transaction[] NO_TRANSACTIONS = new Transaction[0];
+
+    // The transactions shared with the ledger this one was forked from, never written
+    private Transaction[] base = NO_TRANSACTIONS;
+    private int baseLength;
+    private boolean forked;
+    // The transactions after the base, in an array that only this ledger writes after length
+    private Transaction[] entries;
+    private int length;
+    // A snapshot never writes in its array, the list it was taken from may still append to it
+    private final boolean snapshot;
+
+    public TransactionLedger() {
+        entries = new Transaction[INITIAL_CAPACITY];
+        snapshot = false;
+    }
+
+    /**
+     * Creates a copy of the transactions that can be changed on its own.
+     * @param other the transactions to be copied
+     */
+    public TransactionLedger(final TransactionLedger other) {
+        entries = other.toArray(new Transaction[Math.max(INITIAL_CAPACITY, other.size())]);
+        length = other.size();
+        snapshot = false;
+    }
+
+    private TransactionLedger(final TransactionLedger other, final boolean snapshot) {
+        base = other.base;
+        baseLength = other.baseLength;
+        forked = other.forked;
+        entries = other.entries;
+        length = other.length;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * The transactions added so far, as a list that is not changed by the next ones.
+     * Nothing can be added to a snapshot; it can still be sorted, in an array of its own.
+     * @return the snapshot
+     */
+    public TransactionLedger snapshot() {
+        return new TransactionLedger(this, true);
+    }
+
+    /**
+     * The transactions added so far, as the base of a list that grows on its own.
+     * It costs O(1) if this ledger is not a fork itself, otherwise its base is copied.
+     * @return the fork
+     */
+    public TransactionLedger fork() {
+        TransactionLedger fork = new TransactionLedger(this, false);
+        if (baseLength > 0) {
+            fork.entries = toArray(new Transaction[size()]);
+            fork.length = size();
+        }
+        fork.base = fork.entries;
+        fork.baseLength = fork.length;
+        fork.forked = true;
+        fork.entries = new Transaction[INITIAL_CAPACITY];
+        fork.length = 0;
+        return fork;
+    }
+
+    /**
+     * Checks if this ledger is a fork that was only appended to, so it is still made of the
+     * transactions it was forked from followed by the ones added to it.
+     * @return false if it is not a fork or if it was sorted
+     */
+    public boolean isIntactFork() {
+        return forked;
+    }
+
+    @Override
+    public Transaction get(final int index) {
+        Objects.checkIndex(index, size());
+        return index < baseLength ? base[index] : entries[index - baseLength];
+    }
+
+    @Override
+    public int size() {
+        return baseLength + length;
+    }
+
+    @Override
+    public boolean add(final Transaction transaction) {
+        if (snapshot) {
+            throw new UnsupportedOperationException("A snapshot of the transactions is read-only");
+        }
+        if (length == entries.length) {
+            entries = Arrays.copyOf(entries, Math.max(INITIAL_CAPACITY, length * 2));
+        }
+        entries[length++] = transaction;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public void sort(final Comparator<? super Transaction> comparator) {
+        // The snapshots taken before still read the old arrays. A snapshot only copies
+        // its own length, the list it was taken from may be writing after it
+        int size = size();
+        Transaction[] sorted = new Transaction[snapshot ? size : Math.max(size, entries.length)];
+        System.arraycopy(base, 0, sorted, 0, baseLength);
+        System.arraycopy(entries, 0, sorted, baseLength, length);
+        Arrays.sort(sorted, 0, size, comparator);
+        base = NO_TRANSACTIONS;
+        baseLength = 0;
+        forked = false;
+        entries = sorted;
+        length = size;
+        modCount++;
+    }
+}
@@ -3,7 +3,12 @@ package org.poo.models;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
 import org.poo.commands.CommandContext;
 import org.poo.exceptions.CurrencyConversionException;
 import org.poo.services.ServicePlanStrategy;
@@ -13,11 +18,13 @@ import org.poo.services.Commerciant;
 import java.time.LocalDate;
 import java.time.Period;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.Comparator;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 @Data
 /**
@@ -29,7 +36,7 @@ public class User {
     private final String lastName;
     private final String email;
     private final List<Account> accounts;
-    private List<Transaction> transactions;
+    private TransactionLedger transactions;
     private final String birthDate;
     private final String occupation;
     private ServicePlanStrategy currentPlan;
@@ -39,14 +46,32 @@ public class User {
     // Count the number of payments for the silver plan (for the automatically upgrade)
     private double countSilverPayments;
     private double totalSpendingThreshold; // in RON
+    // False when a transaction was added out of timestamp order since the last sort
+    private boolean transactionsSorted = true;
+    // Running totals of the card payments, for the reports over an interval
+    private SpendingAggregates spendings = new SpendingAggregates();
+    // In an overlay (see overlay), the transactions added since it was taken, not yet in
+    // the totals of the user; null for the other users
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private List<Transaction> appended;
+    // How many of them are in the totals of the overlay, see getSpendings
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private int recordedAppended;
 
     public User(final String firstName, final String lastName, final String email,
                 final String birthDate, final String occupation) {
         this.firstName = firstName;
         this.lastName = lastName;
         this.email = email;
-        this.accounts = new ArrayList<>();
-        transactions = new ArrayList<>();
+        // Copied on write, so the readers of a snapshot can search it while it changes
+        this.accounts = new CopyOnWriteArrayList<>();
+        transactions = new TransactionLedger();
         this.birthDate = birthDate;
         this.occupation = occupation;
         // Set the default plan based on the occupation
@@ -58,6 +83,118 @@ public class User {
         countSilverPayments = 0;
     }
 
+    /**
+     * Creates a private copy of a user, with copies of the accounts and of the list
+     * of transactions (the transactions themselves are never changed, so they are shared).
+     * The owner account of an associate is not copied, it still points to the original.
+     * @param other the user to be copied
+     */
+    public User(final User other) {
+        this(other, new TransactionLedger(other.transactions),
+                new SpendingAggregates(other.spendings));
+    }
+
+    private User(final User other, final TransactionLedger transactions,
+                 final SpendingAggregates spendings) {
+        firstName = other.firstName;
+        lastName = other.lastName;
+        email = other.email;
+        birthDate = other.birthDate;
+        occupation = other.occupation;
+        List<Account> copiedAccounts = new ArrayList<>();
+        for (Account account : other.accounts) {
+            copiedAccounts.add(new Account(account));
+        }
+        accounts = new CopyOnWriteArrayList<>(copiedAccounts);
+        this.transactions = transactions;
+        transactionsSorted = other.transactionsSorted;
+        this.spendings = spendings;
+        currentPlan = other.currentPlan;
+        receivedCashbacks = new HashSet<>(other.receivedCashbacks);
+        role = other.role;
+        ownerAccount = other.ownerAccount;
+        countSilverPayments = other.countSilverPayments;
+        totalSpendingThreshold = other.totalSpendingThreshold;
+    }
+
+    /**
+     * Creates a read-only version of the user as it is now, for a reader on another thread
+     * (see SnapshotReader). The transactions and the totals of the payments are not copied:
+     * the version shares them at their current length (see TransactionLedger.snapshot), so
+     * it costs the same however long the history is. Only the accounts and their cards are
+     * copied, with the balances read from their atomics.
+     * @return the version of the user
+     */
+    public User snapshot() {
+        return new User(this, transactions.snapshot(), spendings.snapshot());
+    }
+
+    /**
+     * Creates a copy of the user that records its changes as a delta over this user, for a
+     * speculative run (see OptimisticExecution). The fields and the accounts with their
+     * balances are copied; the transactions are forked (see TransactionLedger.fork) and the
+     * totals of the payments are shared, so the cost does not depend on the history. The
+     * transactions added to the overlay are kept aside, and copyStateFrom adds them to this
+     * user. This user must not change while the overlay is used.
+     * @return the overlay
+     */
+    public User overlay() {
+        User overlay = new User(this, transactions.fork(), spendings);
+        overlay.appended = new ArrayList<>();
+        return overlay;
+    }
+
+    /**
+     * Getter for the running totals of the card payments.
+     * The totals of an overlay are only copied from its user when they are read.
+     * @return the totals
+     */
+    public SpendingAggregates getSpendings() {
+        if (appended != null && recordedAppended < appended.size()) {
+            if (recordedAppended == 0) {
+                spendings = new SpendingAggregates(spendings);
+            }
+            for (; recordedAppended < appended.size(); recordedAppended++) {
+                spendings.record(appended.get(recordedAppended));
+            }
+        }
+        return spendings;
+    }
+
+    /**
+     * Takes over the values of a copy of this user and of its accounts.
+     * The accounts, the cards and the owner account must not have changed in the copy.
+     * The transactions of an overlay are added to the ones of this user, which is what the
+     * overlay started from (checked with versions by the caller).
+     * @param copy the copy created from this user
+     */
+    public void copyStateFrom(final User copy) {
+        if (copy.appended == null) {
+            transactions = copy.transactions;
+            transactionsSorted = copy.transactionsSorted;
+            spendings = copy.spendings;
+        } else if (copy.transactions.isIntactFork()) {
+            for (Transaction transaction : copy.appended) {
+                addTransaction(transaction);
+            }
+        } else {
+            // The overlay sorted its transactions, they are taken as they are
+            transactions = new TransactionLedger(copy.transactions);
+            transactionsSorted = copy.transactionsSorted;
+            for (Transaction transaction : copy.appended) {
+                spendings.record(transaction);
+            }
+        }
+        currentPlan = copy.currentPlan;
+        receivedCashbacks = copy.receivedCashbacks;
+        role = copy.role;
+        countSilverPayments = copy.countSilverPayments;
+        totalSpendingThreshold = copy.totalSpendingThreshold;
+        for (int i = 0; i < accounts.size(); i++) {
+            accounts.get(i).copyStateFrom(copy.accounts.get(i));
+        }
+    }
+
     /**
      * Add a new account to the user.
      * @param account the specific account to be added
@@ -164,28 +301,132 @@ public class User {
      * @param transaction the specific transaction to be added
      */
     public void addTransaction(final Transaction transaction) {
+        if (!transactions.isEmpty()
+                && transaction.getTimestamp() < transactions.getLast().getTimestamp()) {
+            transactionsSorted = false;
+        }
         transactions.add(transaction);
+        if (appended != null) {
+            appended.add(transaction);
+        } else {
+            spendings.record(transaction);
+        }
+    }
+
+    /**
+     * Sort the transactions by timestamp, only if a transaction was added out of order.
+     * The sort is stable, so the transactions with the same timestamp keep their order.
+     */
+    private void sortTransactions() {
+        if (!transactionsSorted) {
+            transactions.sort(Comparator.comparingInt(Transaction::getTimestamp));
+            transactionsSorted = true;
+        }
+    }
+
+    /**
+     * Binary search for the first transaction with a timestamp greater or equal to the given one.
+     * The transactions must be sorted.
+     * @param timestamp the searched timestamp
+     * @return the index of the first such transaction, or the size of the list
+     */
+    private int lowerBound(final int timestamp) {
+        int low = 0;
+        int high = transactions.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (transactions.get(middle).getTimestamp() < timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Find the index of the transaction a cursor points to, without walking the previous pages.
+     * @param cursor the cursor of the page
+     * @return the index of the first transaction of the page
+     */
+    private int seekTransaction(final TransactionCursor cursor) {
+        int first = lowerBound(cursor.getTimestamp());
+        int index = first + cursor.getSequence();
+        // Never jump over a transaction with a greater timestamp
+        return Math.min(index, upperBound(cursor.getTimestamp()));
+    }
+
+    /**
+     * Binary search for the first transaction with a timestamp greater than the given one.
+     * The transactions must be sorted.
+     * @param timestamp the searched timestamp
+     * @return the index of the first such transaction, or the size of the list
+     */
+    private int upperBound(final int timestamp) {
+        return timestamp == Integer.MAX_VALUE ? transactions.size() : lowerBound(timestamp + 1);
+    }
+
+    /**
+     * Get the transactions of the user within a time interval, found with a binary search.
+     * @param startTimestamp the start timestamp
+     * @param endTimestamp the end timestamp
+     * @return a read-only view of the transactions, sorted by timestamp
+     */
+    public List<Transaction> getTransactionsBetween(final int startTimestamp,
+                                                    final int endTimestamp) {
+        sortTransactions();
+        int from = lowerBound(startTimestamp);
+        int to = Math.max(from, upperBound(endTimestamp));
+        return Collections.unmodifiableList(transactions.subList(from, to));
+    }
+
+    /**
+     * Build the cursor pointing to a transaction.
+     * @param index the index of the transaction
+     * @return the cursor of the transaction
+     */
+    private TransactionCursor cursorAt(final int index) {
+        int timestamp = transactions.get(index).getTimestamp();
+        return new TransactionCursor(timestamp, index - lowerBound(timestamp));
     }
 
     /**
      * Print all the transactions of the user.
      * Using the class Comparator for sorting efficiently the transactions by their timestamp
      * @param transactionsArray the array of transactions
-     * @param output the output array
      */
-    public void printTransactions(final ArrayNode transactionsArray, final ArrayNode output) {
+    public void printTransactions(final ArrayNode transactionsArray) {
+        printTransactions(transactionsArray, null, 0);
+    }
+
+    /**
+     * Print a page of the transactions of the user.
+     * @param transactionsArray the array of transactions
+     * @param cursor the cursor of the page, or null for the first page
+     * @param limit the maximum number of transactions of the page, 0 for no limit
+     * @return the cursor of the next page, or null if this is the last page
+     */
+    public TransactionCursor printTransactions(final ArrayNode transactionsArray,
+                                               final TransactionCursor cursor,
+                                               final int limit) {
         // Sorting the transactions by timestamp
-        transactions.sort(Comparator.comparingInt(Transaction::getTimestamp));
-        for (Transaction transaction : transactions) {
+        sortTransactions();
+        int index = cursor == null ? 0 : seekTransaction(cursor);
+        for (; index < transactions.size(); index++) {
+            Transaction transaction = transactions.get(index);
             // Ignoring the "Funds added" transaction
             if (transaction.getDescription().equals("Funds added")) {
                 continue;
             }
+            // The page is full, the next one starts with this transaction
+            if (limit > 0 && transactionsArray.size() == limit) {
+                return cursorAt(index);
+            }
             // Searching for the current transaction
             String transactionType = determineTransactionType(transaction);
 
             // Creating a JSON object for the transaction
-            ObjectNode transactionJson = output.objectNode();
+            ObjectNode transactionJson = transactionsArray.objectNode();
             transactionJson.put("timestamp", transaction.getTimestamp());
             transactionJson.put("description", transaction.getDescription());
 
@@ -195,6 +436,7 @@ public class User {
             // Adding the transaction to the transactions array for the user
             transactionsArray.add(transactionJson);
         }
+        return null;
     }
 
     /**
@@ -236,20 +478,46 @@ public class User {
     /**
      * Print the transactions of the user within a specified time interval.
      * @param transactionsArray the array of transactions
-     * @param output the output array
      * @param startTimestamp the start timestamp
      * @param endTimestamp the end timestamp
+     * @param accountIban the IBAN of the account
      */
     public void printReportTransactions(final ArrayNode transactionsArray,
-                                        final ArrayNode output,
                                         final int startTimestamp,
                                         final int endTimestamp,
                                         final String accountIban) {
+        printReportTransactions(transactionsArray, startTimestamp, endTimestamp,
+                accountIban, null, 0);
+    }
+
+    /**
+     * Print a page of the transactions of the user within a specified time interval.
+     * @param transactionsArray the array of transactions
+     * @param startTimestamp the start timestamp
+     * @param endTimestamp the end timestamp
+     * @param accountIban the IBAN of the account
+     * @param cursor the cursor of the page, or null for the first page
+     * @param limit the maximum number of transactions of the page, 0 for no limit
+     * @return the cursor of the next page, or null if this is the last page
+     */
+    public TransactionCursor printReportTransactions(final ArrayNode transactionsArray,
+                                                     final int startTimestamp,
+                                                     final int endTimestamp,
+                                                     final String accountIban,
+                                                     final TransactionCursor cursor,
+                                                     final int limit) {
         // Sorting the transactions by timestamp
-        transactions.sort(Comparator.comparingInt(Transaction::getTimestamp));
+        sortTransactions();
+
+        // Jump directly to the start of the interval (or of the page)
+        int index = lowerBound(startTimestamp);
+        if (cursor != null) {
+            index = Math.max(index, seekTransaction(cursor));
+        }
 
         int prevTimestamp = 0;
-        for (Transaction transaction : transactions) {
+        for (; index < transactions.size(); index++) {
+            Transaction transaction = transactions.get(index);
             // Ignoring the "Funds added" transaction
             if (transaction.getDescription().equals("Funds added")) {
                 continue;
@@ -258,10 +526,6 @@ public class User {
             if (!transaction.getAccount().equals(accountIban)) {
                 continue;
             }
-            // Checking if the transaction is within the specified time interval
-            if (transaction.getTimestamp() < startTimestamp) {
-                continue;
-            }
 
             if (transaction.getTimestamp() > endTimestamp) {
                 break;
@@ -272,11 +536,16 @@ public class User {
                 continue;
             }
 
+            // The page is full, the next one starts with this transaction
+            if (limit > 0 && transactionsArray.size() == limit) {
+                return cursorAt(index);
+            }
+
             // Searching for the current transaction
             String transactionType = determineTransactionType(transaction);
 
             // Creating a JSON object for the transaction
-            ObjectNode transactionJson = output.objectNode();
+            ObjectNode transactionJson = transactionsArray.objectNode();
             transactionJson.put("timestamp", transaction.getTimestamp());
             transactionJson.put("description", transaction.getDescription());
 
@@ -289,6 +558,7 @@ public class User {
             // Updating the previous timestamp
             prevTimestamp = transaction.getTimestamp();
         }
+        return null;
     }
 
     /**
@@ -307,7 +577,7 @@ public class User {
                                                     final ObjectMapper objectMapper,
                                                     final String accountIban) {
         // Sorting the transactions by timestamp
-        transactions.sort(Comparator.comparingInt(Transaction::getTimestamp));
+        sortTransactions();
 
         for (Transaction transaction : transactions) {
             // Ignoring the "Funds added" transaction
@@ -0,0 +1,226 @@
+package org.poo.server;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.poo.engine.BankEngine;
+import org.poo.engine.ShardedExecution;
+import org.poo.fileio.CommandInput;
+import org.poo.fileio.ObjectInput;
+import org.poo.fileio.OutputSink;
+import org.poo.fileio.StreamingOutputSink;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Serves the commands of one bank over a local TCP port.
+ *
+ * The protocol is one JSON document per line: the client sends a CommandInput object
+ * (the same fields as in the "commands" array of an input file) and receives a line with
+ * the JSON array of the nodes the command added to the output (usually one or none).
+ * A line can also hold a JSON array of commands, which are submitted as one batch; the
+ * response is then an array with the output of each command, in the same order.
+ * A line that is not a command gets an object with an "error" field.
+ *
+ * Every connection is handled by its own virtual thread, so thousands of clients can wait
+ * for their commands without holding a platform thread each. The commands go through
+ * a ShardedExecution: the commands of the same account run one at a time, in the order
+ * they arrived. The output of all the commands, in that order, is also written to a
+ * journal file with the same layout as the output of an input file.
+ */
+public final class BankServer implements Closeable {
+    private static final int DEFAULT_PORT = 8042;
+    private static final int BACKLOG = 4096;
+    private static final String DEFAULT_JOURNAL = "server-journal.json";
+
+    private final ObjectMapper objectMapper;
+    private final ServerSocket serverSocket;
+    private final OutputSink journal;
+    private final ShardedExecution executor;
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+
+    public BankServer(final BankEngine engine, final OutputSink journal,
+                      final int port) throws IOException {
+        this.objectMapper = engine.getObjectMapper();
+        this.journal = journal;
+        this.serverSocket = new ServerSocket(port, BACKLOG, InetAddress.getLoopbackAddress());
+        this.executor = new ShardedExecution(engine, journal,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Getter for the port the server listens on.
+     * @return the local port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accepts connections until the server is closed. Each connection is handled
+     * on a new virtual thread.
+     */
+    public void serve() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                clients.add(socket);
+                Thread.ofVirtual().name("bank-client-" + socket.getPort())
+                        .start(() -> handle(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    System.err.println("Error accepting a connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Answers the commands of one client, one line at a time, until it disconnects.
+     */
+    private void handle(final Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(
+                     socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(
+                     socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            String line = in.readLine();
+            while (line != null) {
+                out.write(objectMapper.writeValueAsString(respond(line)));
+                out.newLine();
+                out.flush();
+                line = in.readLine();
+            }
+        } catch (IOException e) {
+            // The client closed the connection or the server is shutting down
+        } finally {
+            clients.remove(socket);
+        }
+    }
+
+    /**
+     * Executes the command (or the batch of commands) from a request line and builds
+     * the response. A line that cannot be decoded or submitted (blank, null, not an
+     * object, a command the engine rejects) only gets an error object, so the
+     * connection stays open for the next line.
+     * @param line the request
+     * @return the nodes added by the command, the list of outputs of a batch,
+     *         or an error object
+     */
+    private JsonNode respond(final String line) {
+        if (line.isBlank()) {
+            return error("Empty request");
+        }
+        boolean batch = line.stripLeading().startsWith("[");
+        CommandInput[] decoded;
+        try {
+            if (batch) {
+                decoded = objectMapper.readValue(line, CommandInput[].class);
+            } else {
+                decoded = new CommandInput[] {objectMapper.readValue(line, CommandInput.class)};
+            }
+        } catch (JsonProcessingException e) {
+            return error("Invalid command: " + e.getOriginalMessage());
+        } catch (RuntimeException e) {
+            return error("Invalid command: " + e.getMessage());
+        }
+        // "null", or a batch with a null element
+        if (decoded == null || Arrays.asList(decoded).contains(null)) {
+            return error("Invalid command: not a command object");
+        }
+        List<CommandInput> commands = List.of(decoded);
+
+        try {
+            List<List<JsonNode>> outputs = executor.submitBatch(commands).get();
+            ArrayNode response = objectMapper.createArrayNode();
+            for (List<JsonNode> nodes : outputs) {
+                if (batch) {
+                    response.addArray().addAll(nodes);
+                } else {
+                    response.addAll(nodes);
+                }
+            }
+            return response;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return error("Interrupted");
+        } catch (IOException | ExecutionException | RuntimeException e) {
+            return error(e.getMessage());
+        }
+    }
+
+    private ObjectNode error(final String message) {
+        ObjectNode errorNode = objectMapper.createObjectNode();
+        errorNode.put("error", message);
+        return errorNode;
+    }
+
+    /**
+     * Stops accepting connections, disconnects the clients, waits for the commands
+     * that were already submitted and closes the journal.
+     * @throws IOException if the journal cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : clients) {
+            socket.close();
+        }
+        try {
+            executor.close();
+        } finally {
+            journal.close();
+        }
+    }
+
+    /**
+     * Starts a server for the bank described by an input file. Only the users, the exchange
+     * rates and the commerciants of the file are used; the commands come from the clients.
+     * @param args the input file, then optionally the port and the journal file
+     * @throws IOException if the input cannot be read or the port cannot be opened
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: BankServer <input file> [port] [journal file]");
+            return;
+        }
+        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectInput inputData = objectMapper.readValue(new File(args[0]), ObjectInput.class);
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+        File journalFile = new File(args.length > 2 ? args[2] : DEFAULT_JOURNAL);
+
+        BankEngine engine = new BankEngine.Builder(objectMapper)
+                .users(inputData.getUsers())
+                .exchangeRates(inputData.getExchangeRates())
+                .commerciants(inputData.getCommerciants())
+                .build();
+        BankServer server = new BankServer(engine,
+                new StreamingOutputSink(objectMapper, journalFile), port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException e) {
+                System.err.println("Error closing the server: " + e.getMessage());
+            }
+        }));
+        System.out.println("Bank server listening on port " + server.getPort());
+        server.serve();
+    }
+}
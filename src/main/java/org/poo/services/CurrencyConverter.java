@@ -2,22 +2,38 @@ package org.poo.services;
 
 import org.poo.exceptions.CurrencyConversionException;
 
+import java.util.ArrayDeque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
-import java.util.LinkedList;
 
 /**
  * The CurrencyConverter class is responsible for converting
  * an amount from one currency to another.
+ *
+ * The rate between every two currencies is resolved once, when the exchange rates are set,
+ * into an immutable snapshot. The snapshot is published through a volatile field, so the
+ * conversions only read it: they take no lock and allocate nothing, and any number of
+ * threads can convert at the same time. Setting new rates builds a new snapshot and
+ * replaces the old one at once; a conversion sees either the old rates or the new ones.
  */
 public class CurrencyConverter {
 
-    private final List<ExchangeRate> exchangeRates;
+    private volatile Rates rates;
 
     public CurrencyConverter(final List<ExchangeRate> exchangeRates) {
-        this.exchangeRates = exchangeRates;
+        this.rates = new Rates(exchangeRates);
+    }
+
+    /**
+     * Replaces the exchange rates. The conversions that already started keep using
+     * the old rates.
+     * @param exchangeRates the new exchange rates
+     */
+    public void setExchangeRates(final List<ExchangeRate> exchangeRates) {
+        rates = new Rates(exchangeRates);
     }
 
     /**
@@ -37,62 +53,88 @@ public class CurrencyConverter {
             return amount;
         }
 
-        // Map to track visited currencies and their respective conversion rates
-        Map<String, Double> visited = new HashMap<>();
-        Queue<String> queue = new LinkedList<>();
-
-        // Start with the source currency
-        queue.add(fromCurrency);
-        visited.put(fromCurrency, 1.0);
-
-        while (!queue.isEmpty()) {
-            String current = queue.poll();
-            double currentRate = visited.get(current);
-
-            // Traverse all exchange rates
-            for (ExchangeRate rate : exchangeRates) {
-                // Handle the direct conversion (current -> nextCurrency)
-                if (rate.getFrom().equals(current)) {
-                    String nextCurrency = rate.getTo();
-                    double newRate = currentRate * rate.getRate();
-
-                    if (nextCurrency.equals(toCurrency)) {
-                        return amount * newRate;
-                    }
+        Map<String, Double> fromRates = rates.resolved.get(fromCurrency);
+        Double rate = fromRates == null ? null : fromRates.get(toCurrency);
+        if (rate == null) {
+            // If no path was found, throw an exception
+            throw new CurrencyConversionException("Currency conversion not supported");
+        }
+        return amount * rate;
+    }
 
-                    if (!visited.containsKey(nextCurrency)) {
-                        visited.put(nextCurrency, newRate);
-                        queue.add(nextCurrency);
-                    }
-                }
+    /**
+     * Helper method: Print all exchange rates.
+     */
+    public void printExchangeRates() {
+        for (ExchangeRate rate : rates.exchangeRates) {
+            System.out.println(rate);
+        }
+    }
 
-                // Handle the inverse conversion (current -> fromCurrency)
-                if (rate.getTo().equals(current)) {
-                    String nextCurrency = rate.getFrom();
-                    double newRate = currentRate * (1 / rate.getRate());
+    /**
+     * The exchange rates and the resolved rate of every pair of currencies between which
+     * there is a path. Never changed after it is built.
+     */
+    private static final class Rates {
+        private final List<ExchangeRate> exchangeRates;
+        // Source currency -> target currency -> rate
+        private final Map<String, Map<String, Double>> resolved;
+
+        Rates(final List<ExchangeRate> exchangeRates) {
+            this.exchangeRates = List.copyOf(exchangeRates);
+            Map<String, Map<String, Double>> all = new HashMap<>();
+            for (ExchangeRate rate : this.exchangeRates) {
+                all.computeIfAbsent(rate.getFrom(), this::resolve);
+                all.computeIfAbsent(rate.getTo(), this::resolve);
+            }
+            this.resolved = Map.copyOf(all);
+        }
 
-                    if (nextCurrency.equals(toCurrency)) {
-                        return amount * newRate;
+        /**
+         * Finds the rates from one currency to all the others, with a breadth first search
+         * over the direct and inverse rates. Each currency gets the rate of the first path
+         * that reaches it, multiplied in the order of the path, as if it were searched alone.
+         * @param fromCurrency the source currency
+         * @return the rate to each reachable currency
+         */
+        private Map<String, Double> resolve(final String fromCurrency) {
+            // Map to track visited currencies and their respective conversion rates
+            Map<String, Double> visited = new LinkedHashMap<>();
+            Queue<String> queue = new ArrayDeque<>();
+
+            // Start with the source currency
+            queue.add(fromCurrency);
+            visited.put(fromCurrency, 1.0);
+
+            while (!queue.isEmpty()) {
+                String current = queue.poll();
+                double currentRate = visited.get(current);
+
+                // Traverse all exchange rates
+                for (ExchangeRate rate : exchangeRates) {
+                    // Handle the direct conversion (current -> nextCurrency)
+                    if (rate.getFrom().equals(current)) {
+                        visit(visited, queue, rate.getTo(), currentRate * rate.getRate());
                     }
 
-                    if (!visited.containsKey(nextCurrency)) {
-                        visited.put(nextCurrency, newRate);
-                        queue.add(nextCurrency);
+                    // Handle the inverse conversion (current -> fromCurrency)
+                    if (rate.getTo().equals(current)) {
+                        visit(visited, queue, rate.getFrom(),
+                                currentRate * (1 / rate.getRate()));
                     }
                 }
             }
-        }
 
-        // If no path was found, throw an exception
-        throw new CurrencyConversionException("Currency conversion not supported");
-    }
+            visited.remove(fromCurrency);
+            return Map.copyOf(visited);
+        }
 
-    /**
-     * Helper method: Print all exchange rates.
-     */
-    public void printExchangeRates() {
-        for (ExchangeRate rate : exchangeRates) {
-            System.out.println(rate);
+        private static void visit(final Map<String, Double> visited, final Queue<String> queue,
+                                  final String nextCurrency, final double newRate) {
+            if (!visited.containsKey(nextCurrency)) {
+                visited.put(nextCurrency, newRate);
+                queue.add(nextCurrency);
+            }
         }
     }
 }
@@ -0,0 +1,32 @@
+package org.poo.utils;
+
+import java.util.Random;
+
+/**
+ * Generates the IBANs and the card numbers of one bank.
+ * Every engine owns its own generator, so each run starts from the same seeds
+ * and the generated numbers do not depend on the other runs in the JVM.
+ */
+public final class IdGenerator {
+    private static final int IBAN_SEED = 1;
+    private static final int CARD_SEED = 2;
+
+    private final Random ibanRandom = new Random(IBAN_SEED);
+    private final Random cardRandom = new Random(CARD_SEED);
+
+    /**
+     * Generate the next IBAN of the bank.
+     * @return the IBAN as String
+     */
+    public String generateIBAN() {
+        return Utils.generateIBAN(ibanRandom);
+    }
+
+    /**
+     * Generate the next card number of the bank.
+     * @return the card number as String
+     */
+    public String generateCardNumber() {
+        return Utils.generateCardNumber(cardRandom);
+    }
+}
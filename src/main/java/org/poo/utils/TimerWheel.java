@@ -0,0 +1,146 @@
+package org.poo.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timer wheel, driven by an external clock (the timestamps of the commands).
+ *
+ * There are LEVELS wheels of 64 slots. A slot of the first wheel holds the items that
+ * expire on one tick, a slot of the second one the items of 64 ticks, and so on. When the
+ * first wheel turns around, the next slot of the second wheel is emptied into the first
+ * one, and so on for the higher levels. An item is moved at most once per level, and a tick
+ * only looks at the slots that are due, no matter how many items are waiting. While the first
+ * wheel is empty, the clock jumps straight to the next turn.
+ * @param <T> the type of the items
+ */
+public final class TimerWheel<T> {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    private final List<List<List<Timeout<T>>>> wheels = new ArrayList<>();
+    // The number of items on each level
+    private final int[] counts = new int[LEVELS];
+    private long now;
+    private int size;
+
+    /**
+     * Creates an empty wheel.
+     * @param start the current time
+     */
+    public TimerWheel(final long start) {
+        now = start;
+        for (int level = 0; level < LEVELS; level++) {
+            List<List<Timeout<T>>> wheel = new ArrayList<>(SLOTS);
+            for (int slot = 0; slot < SLOTS; slot++) {
+                wheel.add(new ArrayList<>());
+            }
+            wheels.add(wheel);
+        }
+    }
+
+    /**
+     * Adds an item that expires at the given time. An item whose time has already passed
+     * expires on the next tick.
+     * @param item the item
+     * @param deadline the time the item expires at
+     */
+    public void schedule(final T item, final long deadline) {
+        place(new Timeout<>(item, Math.max(deadline, now + 1)));
+        size++;
+    }
+
+    /**
+     * Moves the clock forward, tick by tick, and hands the expired items to the callback,
+     * in the order of their deadlines. The clock never moves back.
+     * @param time the new time
+     * @param expired called for each expired item
+     */
+    public void advanceTo(final long time, final Consumer<T> expired) {
+        while (now < time) {
+            if (size == 0) {
+                now = time;
+                return;
+            }
+            if (counts[0] == 0) {
+                // Nothing can expire before the next turn of the first wheel
+                long turn = now | MASK;
+                if (turn >= time) {
+                    now = time;
+                    return;
+                }
+                now = turn;
+            }
+            tick(expired);
+        }
+    }
+
+    /**
+     * Getter for the number of items that did not expire yet.
+     * @return the number of items
+     */
+    public int size() {
+        return size;
+    }
+
+    private void tick(final Consumer<T> expired) {
+        now++;
+        // Bring down the items of the higher levels whose range starts now
+        for (int level = 1; level < LEVELS && digit(now, level - 1) == 0; level++) {
+            List<Timeout<T>> slot = wheels.get(level).get(digit(now, level));
+            List<Timeout<T>> moved = new ArrayList<>(slot);
+            slot.clear();
+            counts[level] -= moved.size();
+            for (Timeout<T> timeout : moved) {
+                place(timeout);
+            }
+        }
+
+        List<Timeout<T>> slot = wheels.getFirst().get(digit(now, 0));
+        if (slot.isEmpty()) {
+            return;
+        }
+        List<Timeout<T>> due = new ArrayList<>(slot);
+        slot.clear();
+        counts[0] -= due.size();
+        for (Timeout<T> timeout : due) {
+            if (timeout.deadline <= now) {
+                size--;
+                expired.accept(timeout.item);
+            } else {
+                place(timeout);
+            }
+        }
+    }
+
+    /**
+     * Puts an item on the lowest level whose range covers its deadline. The items further
+     * than the last level wait in its furthest slot and are placed again when it is emptied.
+     */
+    private void place(final Timeout<T> timeout) {
+        long delay = timeout.deadline - now;
+        int level = 0;
+        while (level < LEVELS - 1 && delay >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        long slotTime = timeout.deadline;
+        if (delay >= 1L << (SLOT_BITS * LEVELS)) {
+            slotTime = now + (MASK << (SLOT_BITS * (LEVELS - 1)));
+        }
+        wheels.get(level).get(digit(slotTime, level)).add(timeout);
+        counts[level]++;
+    }
+
+    private static int digit(final long time, final int level) {
+        return (int) (time >> (SLOT_BITS * level)) & MASK;
+    }
+
+    /**
+     * An item and the time it expires at.
+     */
+    private record Timeout<T>(T item, long deadline) {
+    }
+}